@@ -0,0 +1,131 @@
+package bench;
+
+import server.ControlCodec;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+// Порівняння старого шляху каналу керування (readLine + split + toUpperCase + PrintWriter з autoflush)
+// з ControlCodec на скриптованому потоці MKDIR/CD/MVDIR команд.
+// Запуск: java -cp out bench.ControlCodecBenchmark [кількість команд]
+public class ControlCodecBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    // Рахує виклики flush як наближення кількості системних викликів write
+    private static class CountingOutputStream extends OutputStream {
+        long bytes = 0;
+        long flushes = 0;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+
+    private interface Path {
+        long run(byte[] input, CountingOutputStream sink) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int commands = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        byte[] input = buildScript(commands);
+
+        measure("legacy (BufferedReader/split/PrintWriter)", input, commands, ControlCodecBenchmark::legacy);
+        measure("ControlCodec", input, commands, ControlCodecBenchmark::codec);
+    }
+
+    private static byte[] buildScript(int commands) {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < commands; i++) {
+            switch (i % 4) {
+                case 0 -> script.append("MKDIR dir").append(i).append('\n');
+                case 1 -> script.append("cd dir").append(i - 1).append('\n');
+                case 2 -> script.append("MVDIR old").append(i).append(" \"new dir ").append(i).append("\"\n");
+                default -> script.append("CD ..\n");
+            }
+        }
+        return script.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void measure(String name, byte[] input, int commands, Path path) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            path.run(input, new CountingOutputStream());
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bestNanos = Long.MAX_VALUE;
+        long allocated = 0;
+        CountingOutputStream sink = null;
+        long checksum = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink = new CountingOutputStream();
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            checksum += path.run(input, sink);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        }
+
+        System.out.printf("%-45s %8.1f ns/cmd %10.1f B/cmd %8d flushes (checksum %d)%n",
+                name, (double) bestNanos / commands, (double) allocated / commands, sink.flushes, checksum);
+    }
+
+    private static long legacy(byte[] input, CountingOutputStream sink) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input)));
+        PrintWriter out = new PrintWriter(sink, true);
+        long checksum = 0;
+        String commandLine;
+        while ((commandLine = in.readLine()) != null) {
+            String[] parts = commandLine.split(" ", 2);
+            String command = parts[0].toUpperCase();
+            String args = parts.length > 1 ? parts[1] : "";
+            switch (command) {
+                case "MKDIR", "CD" -> checksum += args.length();
+                case "MVDIR" -> {
+                    String[] paths = args.split(" ");
+                    checksum += paths.length;
+                }
+                default -> checksum--;
+            }
+            out.println("OK: Directory changed to dir.");
+        }
+        return checksum;
+    }
+
+    private static long codec(byte[] input, CountingOutputStream sink) throws IOException {
+        ControlCodec codec = new ControlCodec(new ByteArrayInputStream(input), sink);
+        long checksum = 0;
+        ControlCodec.Command command;
+        while ((command = codec.readCommand()) != null) {
+            switch (command) {
+                case MKDIR, CD -> checksum += codec.remainingArg().length();
+                case MVDIR -> {
+                    codec.nextArg();
+                    codec.nextArg();
+                    checksum += 2;
+                }
+                default -> checksum--;
+            }
+            codec.writeLine("OK: Directory changed to dir.");
+        }
+        codec.flush();
+        return checksum;
+    }
+}
@@ -0,0 +1,130 @@
+package bench;
+
+import common.Constants;
+import server.UploadCommitter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+// Пропускна здатність надійного запису дрібних файлів: наївний fsync кожного файлу (і його директорії)
+// проти UploadCommitter - з фіксацією кожного файлу (staging + fsync + перейменування, типово) і з груповою
+// фіксацією через журнал (-Dftp.commit.group). Кілька потоків імітують паралельні завантаження нових файлів.
+// Для групової фіксації у виміряний час входить і завершальна контрольна точка, тобто всі відкладені fsync.
+// Запускати на справжньому диску, а не на tmpfs, де fsync нічого не коштує.
+// Запуск: java -cp out bench.UploadCommitBenchmark [потоки] [файлів на потік] [розмір файлу] [директорія]
+public class UploadCommitBenchmark {
+    private interface Writer {
+        void write(int thread, int file, ByteBuffer data) throws IOException;
+    }
+
+    private interface Finisher {
+        void finish() throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int filesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int fileSize = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+        Path base = Files.createTempDirectory(Paths.get(args.length > 3 ? args[3] : "."), "commit-bench");
+
+        byte[] content = new byte[fileSize];
+        ThreadLocalRandom.current().nextBytes(content);
+        System.out.printf("%d threads x %d files of %d bytes in %s%n", threads, filesPerThread, fileSize, base.toAbsolutePath());
+        try {
+            // Кожен режим пише у власну директорію, щоб усі створювали нові файли
+            Path fileOnly = Files.createDirectories(base.resolve("file-only"));
+            measure("naive: fsync file", threads, filesPerThread, content,
+                    (thread, file, data) -> write(fileOnly.resolve(thread + "-" + file), data, true), null);
+
+            Path naive = Files.createDirectories(base.resolve("naive"));
+            measure("naive: fsync file + directory", threads, filesPerThread, content, (thread, file, data) -> {
+                write(naive.resolve(thread + "-" + file), data, true);
+                syncDirectory(naive); // Без цього новий файл може зникнути після збою
+            }, null);
+
+            Path direct = Files.createDirectories(base.resolve("direct"));
+            UploadCommitter perFile = new UploadCommitter(direct, base.resolve("direct-staging"), Constants.COMMIT_INLINE_MAX, false);
+            measure("UploadCommitter: per-file commit", threads, filesPerThread, content, (thread, file, data) -> {
+                Path staged = perFile.createStagingFile();
+                write(staged, data, false);
+                perFile.commit(staged, direct.resolve(thread + "-" + file));
+            }, null);
+
+            Path root = Files.createDirectories(base.resolve("root"));
+            UploadCommitter committer = new UploadCommitter(root, base.resolve("staging"), Constants.COMMIT_INLINE_MAX, true);
+            Thread commitThread = new Thread(committer, "upload-committer");
+            commitThread.setDaemon(true);
+            commitThread.start();
+            measure("UploadCommitter: group commit", threads, filesPerThread, content, (thread, file, data) -> {
+                Path staged = committer.createStagingFile();
+                write(staged, data, false);
+                committer.commit(staged, root.resolve(thread + "-" + file));
+            }, committer::checkpoint);
+        } finally {
+            try (Stream<Path> walk = Files.walk(base)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void measure(String name, int threads, int filesPerThread, byte[] content, Writer writer,
+                                Finisher finisher) throws InterruptedException, IOException {
+        Thread[] workers = new Thread[threads];
+        long[] errors = new long[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                ByteBuffer data = ByteBuffer.wrap(content);
+                for (int file = 0; file < filesPerThread; file++) {
+                    try {
+                        data.clear();
+                        writer.write(thread, file, data);
+                    } catch (IOException e) {
+                        errors[thread]++;
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (finisher != null) {
+            finisher.finish();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long files = (long) threads * filesPerThread;
+        long failed = 0;
+        for (long e : errors) {
+            failed += e;
+        }
+        System.out.printf("%-35s %9.0f files/s %8.2f MB/s %6d errors%n",
+                name, files / seconds, files * (double) content.length / 1e6 / seconds, failed);
+    }
+
+    private static void write(Path path, ByteBuffer data, boolean sync) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            if (sync) {
+                channel.force(true);
+            }
+        }
+    }
+
+    private static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -1,18 +1,25 @@
 package client;
 
 import common.Constants;
+import common.TlsChannel;
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import javax.net.ssl.SSLContext;
 
 public class FileTransferHandler implements Runnable {
     private String serverAddress;
+    private int controlPort; // Порт каналу керування того ж сервера, з ним узгоджено TLS-сесію
     private int dataPort;
     private Path filePath;
     private TransferMode mode;
     private long fileSize;
+    private SSLContext tlsContext;
+    private TlsChannel tls; // null для нешифрованого каналу
 
     public enum TransferMode {
         UPLOAD,
@@ -20,23 +27,36 @@ public class FileTransferHandler implements Runnable {
     }
 
 
-    public FileTransferHandler(String serverAddress, int dataPort, Path filePath, TransferMode mode, long fileSize) {
+    public FileTransferHandler(String serverAddress, int controlPort, int dataPort, Path filePath, TransferMode mode, long fileSize, SSLContext tlsContext) {
         this.serverAddress = serverAddress;
+        this.controlPort = controlPort;
         this.dataPort = dataPort;
         this.filePath = filePath;
         this.mode = mode;
         this.fileSize = fileSize;
+        this.tlsContext = tlsContext;
     }
 
     @Override
     public void run() {
-        try (Socket dataSocket = new Socket(serverAddress, dataPort)) {
+        try (Socket dataSocket = openDataSocket()) {
             System.out.println("Client Data Channel connected to " + serverAddress + ":" + dataPort);
 
-            if (mode == TransferMode.UPLOAD) {
-                sendFile(dataSocket);
-            } else { // DOWNLOAD
-                receiveFile(dataSocket);
+            if (tlsContext != null) {
+                // Ключ кешу - адреса каналу керування, тому відновлюється вже узгоджена сесія
+                tls = TlsChannel.client(dataSocket.getChannel(), tlsContext, serverAddress, controlPort);
+                tls.handshake();
+            }
+            try {
+                if (mode == TransferMode.UPLOAD) {
+                    sendFile(dataSocket);
+                } else { // DOWNLOAD
+                    receiveFile(dataSocket);
+                }
+            } finally {
+                if (tls != null) {
+                    tls.close();
+                }
             }
             System.out.println("Data transfer complete for " + filePath.getFileName() + ".");
             System.out.print("> ");
@@ -46,9 +66,16 @@ public class FileTransferHandler implements Runnable {
         }
     }
 
+    private Socket openDataSocket() throws IOException {
+        if (tlsContext != null) {
+            return SocketChannel.open(new InetSocketAddress(serverAddress, dataPort)).socket();
+        }
+        return new Socket(serverAddress, dataPort);
+    }
+
     private void sendFile(Socket dataSocket) throws IOException {
         try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(filePath, StandardOpenOption.READ));
-             BufferedOutputStream out = new BufferedOutputStream(dataSocket.getOutputStream())) {
+             BufferedOutputStream out = new BufferedOutputStream(tls != null ? tls.getOutputStream() : dataSocket.getOutputStream())) {
 
             byte[] buffer = new byte[Constants.BUFFER_SIZE];
             int bytesRead;
@@ -62,12 +89,24 @@ public class FileTransferHandler implements Runnable {
                 System.out.print("\rUploading: " + filePath.getFileName() + " - " + (totalBytesSent * 100 / fileSize) + "%");
             }
             out.flush();
+            // Сервер закриває канал лише після фіксації файлу на диску, а якщо фіксація не вдалась -
+            // скидає з'єднання, і читання завершиться помилкою. Під TLS разом з close_notify
+            // приходить і новий квиток сесії (TLS 1.3 квитки одноразові).
+            InputStream ack;
+            if (tls != null) {
+                ack = tls.getInputStream();
+            } else {
+                dataSocket.shutdownOutput();
+                ack = dataSocket.getInputStream();
+            }
+            while (ack.read(buffer) != -1) {
+            }
             System.out.println("\nFile sent: " + filePath.getFileName());
         }
     }
 
     private void receiveFile(Socket dataSocket) throws IOException {
-        try (BufferedInputStream in = new BufferedInputStream(dataSocket.getInputStream());
+        try (BufferedInputStream in = new BufferedInputStream(tls != null ? tls.getInputStream() : dataSocket.getInputStream());
              BufferedOutputStream out = new BufferedOutputStream(Files.newOutputStream(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE))) {
 
             byte[] buffer = new byte[Constants.BUFFER_SIZE];
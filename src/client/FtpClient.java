@@ -1,29 +1,48 @@
 package client;
 
+import common.CommandArgs;
 import common.Constants;
+import common.TlsChannel;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Scanner;
+import javax.net.ssl.SSLContext;
 
 public class FtpClient {
     private Socket controlSocket;
     private PrintWriter out;
     private BufferedReader in;
     private Scanner scanner;
+    private SSLContext tlsContext; // Спільний для всіх з'єднань, щоб канали даних відновлювали TLS-сесію
+    private TlsChannel tls;
 
     public FtpClient() {
         try {
-            controlSocket = new Socket(Constants.SERVER_ADDRESS, Constants.CONTROL_PORT);
-            out = new PrintWriter(controlSocket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(controlSocket.getInputStream()));
+            tlsContext = TlsChannel.createContext(false, true);
+            if (tlsContext != null) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(Constants.SERVER_ADDRESS, Constants.CONTROL_PORT));
+                controlSocket = channel.socket();
+                tls = TlsChannel.client(channel, tlsContext, Constants.SERVER_ADDRESS, Constants.CONTROL_PORT);
+                tls.handshake();
+                out = new PrintWriter(tls.getOutputStream(), true);
+                in = new BufferedReader(new InputStreamReader(tls.getInputStream()));
+            } else {
+                controlSocket = new Socket(Constants.SERVER_ADDRESS, Constants.CONTROL_PORT);
+                out = new PrintWriter(controlSocket.getOutputStream(), true);
+                in = new BufferedReader(new InputStreamReader(controlSocket.getInputStream()));
+            }
             scanner = new Scanner(System.in);
-            System.out.println("Connected to FTP server on " + Constants.SERVER_ADDRESS + ":" + Constants.CONTROL_PORT);
+            System.out.println("Connected to FTP server on " + Constants.SERVER_ADDRESS + ":" + Constants.CONTROL_PORT
+                    + (tls != null ? " (" + tls.getEngine().getSession().getProtocol() + ")" : ""));
         } catch (IOException e) {
             System.err.println("Error connecting to server: " + e.getMessage());
             System.exit(1);
@@ -45,24 +64,30 @@ public class FtpClient {
         try {
             long fileSize = Files.size(localFilePath);
             String filename = localFilePath.getFileName().toString();
-            sendCommand(String.format("UPLOAD %s %d", filename, fileSize));
+            sendCommand(String.format("UPLOAD %s %d", CommandArgs.quote(filename), fileSize));
             System.out.println("Sent UPLOAD command for: " + filename + " (" + fileSize + " bytes)");
 
             String response = readServerResponse();
             if (response != null && response.startsWith("READY_FOR_UPLOAD")) {
                 String[] parts = response.split(" ");
                 int dataPort = -1;
-                if (parts.length == 2) {
+                int controlPort = Constants.CONTROL_PORT;
+                if (parts.length == 2 || parts.length == 4) {
                     try {
                         dataPort = Integer.parseInt(parts[1]);
+                        if (parts.length == 4) {
+                            controlPort = Integer.parseInt(parts[3]);
+                        }
                     } catch (NumberFormatException e) {
-                        System.err.println("Invalid data port from server: " + parts[1]);
+                        System.err.println("Invalid data port from server: " + response);
                         return;
                     }
                 }
+                // У кластері канал даних відкриває вузол-власник і передає свою адресу та порт керування
+                String dataHost = parts.length == 4 ? parts[2] : Constants.SERVER_ADDRESS;
 
                 if (dataPort != -1) {
-                    new Thread(new FileTransferHandler(Constants.SERVER_ADDRESS, dataPort, localFilePath, FileTransferHandler.TransferMode.UPLOAD, fileSize)).start();
+                    new Thread(new FileTransferHandler(dataHost, controlPort, dataPort, localFilePath, FileTransferHandler.TransferMode.UPLOAD, fileSize, tlsContext)).start();
                 } else {
                     System.out.println("Server did not provide a valid data port for upload.");
                 }
@@ -76,7 +101,7 @@ public class FtpClient {
     }
 
     public void downloadFile(String remoteFileName) {
-        sendCommand("DOWNLOAD " + remoteFileName);
+        sendCommand("DOWNLOAD " + CommandArgs.quote(remoteFileName));
         System.out.println("Sent DOWNLOAD command for: " + remoteFileName);
 
         String response = readServerResponse();
@@ -84,22 +109,28 @@ public class FtpClient {
             String[] parts = response.split(" ");
             long fileSize = -1;
             int dataPort = -1;
-            if (parts.length == 3) {
+            int controlPort = Constants.CONTROL_PORT;
+            if (parts.length == 3 || parts.length == 5) {
                 try {
                     fileSize = Long.parseLong(parts[1]);
                     dataPort = Integer.parseInt(parts[2]);
+                    if (parts.length == 5) {
+                        controlPort = Integer.parseInt(parts[4]);
+                    }
                 } catch (NumberFormatException e) {
                     System.err.println("Invalid file size or data port from server: " + parts[1] + ", " + parts[2]);
                     return;
                 }
             }
 
+            String dataHost = parts.length == 5 ? parts[3] : Constants.SERVER_ADDRESS;
+
             if (fileSize != -1 && dataPort != -1) {
                 Path localDownloadPath = Paths.get("downloads", remoteFileName);
                 try {
                     Files.createDirectories(localDownloadPath.getParent());
                     // Передаємо null замість callback
-                    new Thread(new FileTransferHandler(Constants.SERVER_ADDRESS, dataPort, localDownloadPath, FileTransferHandler.TransferMode.DOWNLOAD, fileSize)).start();
+                    new Thread(new FileTransferHandler(dataHost, controlPort, dataPort, localDownloadPath, FileTransferHandler.TransferMode.DOWNLOAD, fileSize, tlsContext)).start();
                 } catch (IOException e) {
                     System.err.println("Error creating download directory: " + e.getMessage());
                 }
@@ -112,17 +143,17 @@ public class FtpClient {
     }
 
     public void createDirectory(String dirName) {
-        sendCommand("MKDIR " + dirName);
+        sendCommand("MKDIR " + CommandArgs.quote(dirName));
         readServerResponse();
     }
 
     public void removeDirectory(String dirName) {
-        sendCommand("RMDIR " + dirName);
+        sendCommand("RMDIR " + CommandArgs.quote(dirName));
         readServerResponse();
     }
 
     public void moveDirectory(String oldPath, String newPath) {
-        sendCommand(String.format("MVDIR %s %s", oldPath, newPath));
+        sendCommand(String.format("MVDIR %s %s", CommandArgs.quote(oldPath), CommandArgs.quote(newPath)));
         readServerResponse();
     }
 
@@ -145,7 +176,7 @@ public class FtpClient {
     }
 
     public void changeDirectory(String targetDir) {
-        sendCommand("CD " + targetDir);
+        sendCommand("CD " + CommandArgs.quote(targetDir));
         readServerResponse();
     }
 
@@ -168,6 +199,9 @@ public class FtpClient {
 
     public void close() {
         try {
+            if (tls != null) {
+                tls.close();
+            }
             if (controlSocket != null) {
                 controlSocket.close();
             }
@@ -251,9 +285,9 @@ public class FtpClient {
                     }
                     break;
                 case "mvdir":
-                    String[] mvArgs = args.split(" ");
-                    if (mvArgs.length == 2) {
-                        client.moveDirectory(mvArgs[0], mvArgs[1]);
+                    List<String> mvArgs = CommandArgs.split(args); // Шляхи з пробілами - в лапках
+                    if (mvArgs.size() == 2) {
+                        client.moveDirectory(mvArgs.get(0), mvArgs.get(1));
                     } else {
                         System.out.println("Usage: mvdir <oldPath> <newPath>");
                     }
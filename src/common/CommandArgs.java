@@ -0,0 +1,50 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Аргументи команд каналу керування: слова через пробіл або рядки в лапках (з \" та \\),
+// так само, як їх розбирає ControlCodec на сервері
+public class CommandArgs {
+    // Бере в лапки, якщо є пробіли чи лапки
+    public static String quote(String arg) {
+        if (arg.indexOf(' ') < 0 && arg.indexOf('"') < 0) {
+            return arg;
+        }
+        return "\"" + arg.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    // Розбиває введений рядок на аргументи; лапки без пари тягнуться до кінця рядка
+    public static List<String> split(String line) {
+        List<String> args = new ArrayList<>();
+        int pos = 0;
+        int length = line.length();
+        while (pos < length) {
+            while (pos < length && line.charAt(pos) == ' ') {
+                pos++;
+            }
+            if (pos >= length) {
+                break;
+            }
+            StringBuilder arg = new StringBuilder();
+            if (line.charAt(pos) == '"') {
+                pos++;
+                while (pos < length && line.charAt(pos) != '"') {
+                    char c = line.charAt(pos);
+                    if (c == '\\' && pos + 1 < length) {
+                        c = line.charAt(++pos);
+                    }
+                    arg.append(c);
+                    pos++;
+                }
+                pos++; // Закриваюча лапка
+            } else {
+                while (pos < length && line.charAt(pos) != ' ') {
+                    arg.append(line.charAt(pos++));
+                }
+            }
+            args.add(arg.toString());
+        }
+        return args;
+    }
+}
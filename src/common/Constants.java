@@ -1,8 +1,28 @@
 package common;
 
 public class Constants {
-    public static final int CONTROL_PORT = 2121; // Порт для команд
+    public static final int CONTROL_PORT = Integer.getInteger("ftp.port", 2121); // Порт для команд
     public static final String SERVER_ADDRESS = "localhost"; // Адреса сервера
     public static final int BUFFER_SIZE = 4096; // Розмір буфера для передачі файлів
-    public static final String ROOT_DIRECTORY = "ftp_root"; // Коренева директорія сервера
+    public static final String ROOT_DIRECTORY = System.getProperty("ftp.root", "ftp_root"); // Коренева директорія сервера
+    public static final long CACHE_MAX_BYTES = Long.getLong("ftp.cache.maxBytes", 64L * 1024 * 1024); // Бюджет пам'яті кешу файлів
+    public static final boolean VERBOSE_LOGGING = Boolean.getBoolean("ftp.verbose"); // Журналювання кожної команди
+    public static final long CACHE_MAX_FILE_SIZE = Long.getLong("ftp.cache.maxFileSize", 8L * 1024 * 1024); // Більші файли не кешуються
+    public static final boolean TLS_ENABLED = Boolean.getBoolean("ftp.tls"); // TLS для каналів керування і даних
+    public static final String TLS_KEYSTORE = System.getProperty("ftp.tls.keystore", "ftp.p12"); // Приватний ключ і сертифікат сервера
+    public static final String TLS_KEYSTORE_PASSWORD = System.getProperty("ftp.tls.password", "changeit");
+    public static final String TLS_TRUSTSTORE = System.getProperty("ftp.tls.truststore", "ftp-trust.p12"); // Лише довірені сертифікати, без ключів
+    public static final String TLS_TRUSTSTORE_PASSWORD = System.getProperty("ftp.tls.truststore.password", "changeit");
+    public static final String USERS_FILE = System.getProperty("ftp.users", "users.txt"); // Файл облікових записів
+    public static final int PASSWORD_HASH_ITERATIONS = 310_000; // Ітерації PBKDF2 для нових паролів
+    public static final int AUTH_CACHE_SIZE = 1024; // Кількість користувачів у кеші успішних перевірок пароля
+    public static final String CLUSTER_CONFIG = System.getProperty("ftp.cluster"); // Файл конфігурації кластера, null - автономний режим
+    public static final String NODE_ID = System.getProperty("ftp.node"); // Ідентифікатор цього вузла в конфігурації кластера
+    public static final int DATA_ACCEPT_TIMEOUT_MILLIS = Integer.getInteger("ftp.data.acceptTimeout", 10000); // Очікування підключення до порту даних; менше за PEER_READ_TIMEOUT_MILLIS
+    public static final int PEER_CONNECT_TIMEOUT_MILLIS = Integer.getInteger("ftp.cluster.connectTimeout", 2000); // Підключення до іншого вузла
+    public static final int PEER_READ_TIMEOUT_MILLIS = Integer.getInteger("ftp.cluster.readTimeout", 30000); // Очікування відповіді іншого вузла
+    public static final long PEER_RETRY_DELAY_MILLIS = Long.getLong("ftp.cluster.retryDelay", 5000); // Скільки не звертатися до вузла після збою
+    public static final String STAGING_DIRECTORY = System.getProperty("ftp.staging", ROOT_DIRECTORY + ".staging"); // Незафіксовані завантаження; та сама файлова система, що й корінь
+    public static final boolean COMMIT_GROUP = Boolean.getBoolean("ftp.commit.group"); // Групова фіксація завантажень через журнал замість fsync кожного файлу
+    public static final long COMMIT_INLINE_MAX = Long.getLong("ftp.commit.inlineMax", 64L * 1024); // Дрібніші завантаження фіксуються через журнал
 }
\ No newline at end of file
@@ -0,0 +1,336 @@
+package common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+// Блокуючий TLS поверх SocketChannel на базі SSLEngine.
+// Буфери мережевого рівня direct і розміром з TLS-запис, тому файл з direct-буфера
+// шифрується без проміжного копіювання на кучу.
+public class TlsChannel implements ByteChannel {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private ReadableByteChannel source; // Звідки читаються TLS-записи: сам канал або потік сокета з тайм-аутом
+    private final SSLEngine engine;
+    private ByteBuffer netIn;  // Зашифровані дані з сокета, ще не розібрані (режим запису)
+    private ByteBuffer netOut; // Зашифровані дані для відправки
+    private ByteBuffer appIn;  // Розшифровані дані, ще не прочитані (режим запису)
+    private boolean inboundClosed = false;
+    private InputStream inputStream;
+    private OutputStream outputStream;
+
+    private TlsChannel(SocketChannel channel, SSLEngine engine) {
+        this.channel = channel;
+        this.source = channel;
+        this.engine = engine;
+        int packetSize = engine.getSession().getPacketBufferSize();
+        this.netIn = ByteBuffer.allocateDirect(packetSize);
+        this.netOut = ByteBuffer.allocateDirect(packetSize);
+        this.appIn = ByteBuffer.allocateDirect(engine.getSession().getApplicationBufferSize());
+    }
+
+    // Повертає null, якщо TLS вимкнено. Один контекст на процес: у ньому живе кеш TLS-сесій.
+    // Сервер (withKey) бере з keystore свій ключ і сертифікат. Довірені сертифікати потрібні лише для
+    // вихідних з'єднань (withTrust: клієнт, генератор навантаження, сервер у кластері) - з окремого truststore без ключів.
+    public static SSLContext createContext(boolean withKey, boolean withTrust) throws IOException {
+        if (!Constants.TLS_ENABLED) {
+            return null;
+        }
+        try {
+            KeyManager[] keyManagers = null;
+            if (withKey) {
+                char[] password = Constants.TLS_KEYSTORE_PASSWORD.toCharArray();
+                KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                factory.init(loadKeyStore(Constants.TLS_KEYSTORE, password), password);
+                keyManagers = factory.getKeyManagers();
+            }
+            TrustManager[] trustManagers = null;
+            if (withTrust) {
+                TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                factory.init(loadKeyStore(Constants.TLS_TRUSTSTORE, Constants.TLS_TRUSTSTORE_PASSWORD.toCharArray()));
+                trustManagers = factory.getTrustManagers();
+            }
+
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagers, trustManagers, null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not initialize TLS: " + e.getMessage(), e);
+        }
+    }
+
+    private static KeyStore loadKeyStore(String file, char[] password) throws IOException, GeneralSecurityException {
+        try (InputStream in = Files.newInputStream(Paths.get(file))) {
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(in, password);
+            return keyStore;
+        } catch (IOException e) {
+            throw new IOException("Could not load TLS store " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public static TlsChannel server(SocketChannel channel, SSLContext context) {
+        SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+        return new TlsChannel(channel, engine);
+    }
+
+    // peerHost/peerPort - ключ кешу сесій; канали даних передають адресу каналу керування,
+    // щоб відновити його TLS-сесію замість повного handshake.
+    // peerHost також звіряється з іменами в сертифікаті сервера.
+    public static TlsChannel client(SocketChannel channel, SSLContext context, String peerHost, int peerPort) {
+        SSLEngine engine = context.createSSLEngine(peerHost, peerPort);
+        engine.setUseClientMode(true);
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        engine.setSSLParameters(parameters);
+        return new TlsChannel(channel, engine);
+    }
+
+    // SocketChannel.read не зважає на SO_TIMEOUT, тому з тайм-аутом читаємо через потік сокета
+    public void setReadTimeout(int millis) throws IOException {
+        channel.socket().setSoTimeout(millis);
+        source = Channels.newChannel(channel.socket().getInputStream());
+    }
+
+    public void handshake() throws IOException {
+        engine.beginHandshake();
+        processHandshake();
+    }
+
+    public SSLEngine getEngine() {
+        return engine;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        while (appIn.position() == 0) {
+            if (inboundClosed) {
+                return -1;
+            }
+            unwrap();
+        }
+        appIn.flip();
+        int count = Math.min(appIn.remaining(), dst.remaining());
+        ByteBuffer slice = appIn.duplicate();
+        slice.limit(slice.position() + count);
+        dst.put(slice);
+        appIn.position(appIn.position() + count);
+        appIn.compact();
+        return count;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int written = 0;
+        while (src.hasRemaining()) {
+            // Кожен wrap формує один запис до 16 КБ
+            netOut.clear();
+            SSLEngineResult result = engine.wrap(src, netOut);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("TLS connection closed.");
+            }
+            written += result.bytesConsumed();
+            netOut.flip();
+            writeFully(netOut);
+            if (result.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                    && result.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.FINISHED) {
+                processHandshake();
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            engine.closeOutbound();
+            while (!engine.isOutboundDone()) {
+                netOut.clear();
+                engine.wrap(EMPTY, netOut);
+                netOut.flip();
+                writeFully(netOut);
+            }
+        } catch (IOException e) {
+            // Співрозмовник міг уже закрити з'єднання
+        } finally {
+            channel.close();
+        }
+    }
+
+    public InputStream getInputStream() {
+        if (inputStream == null) {
+            inputStream = new InputStream() {
+                private final byte[] single = new byte[1];
+
+                @Override
+                public int read() throws IOException {
+                    return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    return TlsChannel.this.read(ByteBuffer.wrap(b, off, len));
+                }
+            };
+        }
+        return inputStream;
+    }
+
+    // Накопичує дані до повного TLS-запису, щоб дрібні записи не роздували трафік і CPU
+    public OutputStream getOutputStream() {
+        if (outputStream == null) {
+            outputStream = new OutputStream() {
+                private final ByteBuffer pending = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+
+                @Override
+                public void write(int b) throws IOException {
+                    if (!pending.hasRemaining()) {
+                        flush();
+                    }
+                    pending.put((byte) b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    while (len > 0) {
+                        if (!pending.hasRemaining()) {
+                            flush();
+                        }
+                        int chunk = Math.min(len, pending.remaining());
+                        pending.put(b, off, chunk);
+                        off += chunk;
+                        len -= chunk;
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (pending.position() > 0) {
+                        pending.flip();
+                        TlsChannel.this.write(pending);
+                        pending.clear();
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                    TlsChannel.this.close();
+                }
+            };
+        }
+        return outputStream;
+    }
+
+    private void processHandshake() throws IOException {
+        while (true) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_WRAP:
+                    netOut.clear();
+                    SSLEngineResult result = engine.wrap(EMPTY, netOut);
+                    netOut.flip();
+                    writeFully(netOut);
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        return;
+                    }
+                    break;
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN:
+                    unwrap();
+                    if (inboundClosed) {
+                        throw new SSLException("TLS connection closed during handshake.");
+                    }
+                    break;
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    // Розшифровує щонайменше один запис у appIn (або дочитує дані з сокета)
+    private void unwrap() throws IOException {
+        while (true) {
+            netIn.flip();
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            netIn.compact();
+
+            switch (result.getStatus()) {
+                case OK:
+                    if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK
+                            || result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                        // Пост-handshake повідомлення (наприклад, KeyUpdate)
+                        processHandshake();
+                    }
+                    return;
+                case BUFFER_UNDERFLOW:
+                    if (!netIn.hasRemaining()) {
+                        netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                    }
+                    if (source.read(netIn) == -1) {
+                        inboundClosed = true;
+                        return;
+                    }
+                    break;
+                case BUFFER_OVERFLOW:
+                    if (appIn.position() > 0) {
+                        return; // Спочатку віддаємо вже розшифровані дані
+                    }
+                    appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                    break;
+                case CLOSED:
+                    inboundClosed = true;
+                    return;
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, minCapacity));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
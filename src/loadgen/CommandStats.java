@@ -0,0 +1,55 @@
+package loadgen;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Статистика однієї команди: затримка, час встановлення каналу даних і помилки.
+// Клієнти пишуть у поточні лічильники, потік звіту раз на інтервал переносить їх у загальні.
+public class CommandStats {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram setup = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    private LatencyHistogram intervalLatency = new LatencyHistogram();
+    private LatencyHistogram intervalSetup = new LatencyHistogram();
+    private long intervalErrors = 0;
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+    private final LatencyHistogram totalSetup = new LatencyHistogram();
+    private long totalErrors = 0;
+
+    public void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    // Від відправки UPLOAD/DOWNLOAD до готового (для TLS - після handshake) каналу даних
+    public void recordSetup(long nanos) {
+        setup.record(nanos);
+    }
+
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    // Закриває інтервал; викликається лише потоком звіту
+    void roll() {
+        intervalLatency = new LatencyHistogram();
+        intervalSetup = new LatencyHistogram();
+        latency.drainTo(intervalLatency);
+        setup.drainTo(intervalSetup);
+        intervalLatency.addTo(totalLatency);
+        intervalSetup.addTo(totalSetup);
+        intervalErrors = errors.getAndSet(0);
+        totalErrors += intervalErrors;
+    }
+
+    LatencyHistogram getLatency(boolean total) {
+        return total ? totalLatency : intervalLatency;
+    }
+
+    LatencyHistogram getSetup(boolean total) {
+        return total ? totalSetup : intervalSetup;
+    }
+
+    long getErrors(boolean total) {
+        return total ? totalErrors : intervalErrors;
+    }
+}
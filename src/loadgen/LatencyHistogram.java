@@ -0,0 +1,79 @@
+package loadgen;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Логарифмічна гістограма затримок (крок ~3%), потокобезпечна без блокувань.
+// Діапазон від 1 мкс до ~1 години, тому підходить і для команд, і для багатогодинних прогонів.
+public class LatencyHistogram {
+    private static final double GROWTH = 1.03;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+    private static final int BUCKETS = (int) Math.ceil(Math.log(3_600_000_000.0) / LOG_GROWTH) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(Math.max(1, nanos / 1000)));
+    }
+
+    // Переносить накопичене в target і обнуляє цю гістограму (для інтервальних звітів)
+    public void drainTo(LatencyHistogram target) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.getAndSet(i, 0);
+            if (count != 0) {
+                target.counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    public void addTo(LatencyHistogram target) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                target.counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // Значення перцентиля в мікросекундах (верхня межа кошика)
+    public long percentileMicros(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBoundMicros(i);
+            }
+        }
+        return upperBoundMicros(BUCKETS - 1);
+    }
+
+    public long maxMicros() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return upperBoundMicros(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int bucketOf(long micros) {
+        int bucket = (int) (Math.log(micros) / LOG_GROWTH);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    private static long upperBoundMicros(int bucket) {
+        return (long) Math.ceil(Math.pow(GROWTH, bucket + 1));
+    }
+}
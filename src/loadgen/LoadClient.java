@@ -0,0 +1,321 @@
+package loadgen;
+
+import common.TlsChannel;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Один скриптований клієнт: тримає власне з'єднання керування і виконує команди за заданою сумішшю.
+// Працює у власній директорії load-<id>/, усередині якої перемикається між нею та sub/.
+public class LoadClient implements Runnable {
+    public enum Command {
+        CONNECT, AUTH, LIST, CD, MKDIR, UPLOAD, DOWNLOAD
+    }
+
+    private static final int UPLOAD_NAMES = 8;
+    private static final int MKDIR_NAMES = 16;
+
+    private final int id;
+    private final LoadGenerator generator;
+    private final byte[] transferBuffer = new byte[64 * 1024];
+
+    private SocketChannel controlChannel;
+    private Socket controlSocket;
+    private TlsChannel tls;
+    private PrintWriter out;
+    private BufferedReader in;
+    private boolean inSubdirectory;
+    private Command current = Command.CONNECT; // Команда, що виконується: їй зараховується обрив з'єднання
+    // Імена файлів, завантажених у директорію клієнта [0] та в sub/ [1]
+    private final List<List<String>> uploaded = List.of(new ArrayList<>(), new ArrayList<>());
+
+    public LoadClient(int id, LoadGenerator generator) {
+        this.id = id;
+        this.generator = generator;
+    }
+
+    @Override
+    public void run() {
+        while (generator.isRunning()) {
+            try {
+                connect();
+                while (generator.isRunning()) {
+                    execute(generator.nextCommand());
+                    thinkTime();
+                }
+            } catch (IOException e) {
+                // Розірване з'єднання керування чи тайм-аут: помилка команди, що виконувалась; під'єднуємось заново
+                generator.stats(current).recordError();
+                if (generator.isRunning()) {
+                    System.err.println("Client " + id + ": " + e.getMessage());
+                    sleep(1000);
+                }
+            } finally {
+                disconnect();
+            }
+        }
+    }
+
+    private void connect() throws IOException {
+        current = Command.CONNECT;
+        long start = System.nanoTime();
+        controlChannel = SocketChannel.open();
+        controlSocket = controlChannel.socket();
+        // Завислий сервер - саме те, що має виявити довгий прогін, тому жодне очікування не безстрокове
+        controlSocket.connect(new InetSocketAddress(generator.getHost(), generator.getPort()), generator.getTimeoutMillis());
+        controlSocket.setSoTimeout(generator.getTimeoutMillis());
+        if (generator.getTlsContext() != null) {
+            tls = TlsChannel.client(controlChannel, generator.getTlsContext(), generator.getHost(), generator.getPort());
+            tls.setReadTimeout(generator.getTimeoutMillis());
+            tls.handshake();
+            out = new PrintWriter(tls.getOutputStream(), true);
+            in = new BufferedReader(new InputStreamReader(tls.getInputStream()));
+        } else {
+            out = new PrintWriter(controlSocket.getOutputStream(), true);
+            in = new BufferedReader(new InputStreamReader(controlSocket.getInputStream()));
+        }
+        generator.stats(Command.CONNECT).recordLatency(System.nanoTime() - start);
+
+        simpleCommand(Command.AUTH, "AUTH " + generator.getUsername() + " " + generator.getPassword());
+        simpleCommand(Command.MKDIR, "MKDIR load-" + id + "/sub");
+        enterClientDirectory();
+        uploaded.forEach(List::clear);
+    }
+
+    private void disconnect() {
+        try {
+            if (tls != null) {
+                tls.close();
+            }
+            if (controlSocket != null) {
+                controlSocket.close();
+            }
+        } catch (IOException e) {
+            // Вже закрито
+        }
+        tls = null;
+        controlSocket = null;
+    }
+
+    private void execute(Command command) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (command) {
+            case AUTH:
+                // Повторний AUTH повертає сесію в домашню директорію
+                simpleCommand(command, "AUTH " + generator.getUsername() + " " + generator.getPassword());
+                enterClientDirectory();
+                break;
+            case LIST:
+                list();
+                break;
+            case CD:
+                if (simpleCommand(command, inSubdirectory ? "CD .." : "CD sub")) {
+                    inSubdirectory = !inSubdirectory;
+                }
+                break;
+            case MKDIR:
+                simpleCommand(command, "MKDIR d" + random.nextInt(MKDIR_NAMES));
+                break;
+            case UPLOAD:
+                upload("f" + random.nextInt(UPLOAD_NAMES) + ".bin", generator.nextFileSize());
+                break;
+            case DOWNLOAD:
+                List<String> files = uploaded.get(inSubdirectory ? 1 : 0);
+                if (files.isEmpty()) {
+                    upload("f" + random.nextInt(UPLOAD_NAMES) + ".bin", generator.nextFileSize());
+                } else {
+                    download(files.get(random.nextInt(files.size())));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void enterClientDirectory() throws IOException {
+        simpleCommand(Command.CD, "CD /load-" + id);
+        inSubdirectory = false;
+    }
+
+    // Команда з однорядковою відповіддю OK/ERROR
+    private boolean simpleCommand(Command command, String line) throws IOException {
+        current = command;
+        long start = System.nanoTime();
+        out.println(line);
+        String response = readResponse();
+        long elapsed = System.nanoTime() - start;
+        if (response.startsWith("OK")) {
+            generator.stats(command).recordLatency(elapsed);
+            return true;
+        }
+        generator.stats(command).recordError();
+        return false;
+    }
+
+    private void list() throws IOException {
+        current = Command.LIST;
+        long start = System.nanoTime();
+        out.println("LIST");
+        String line = readResponse();
+        if (line.startsWith("ERROR")) {
+            generator.stats(Command.LIST).recordError();
+            return;
+        }
+        while (!line.equals("LIST_END")) {
+            line = readResponse();
+        }
+        generator.stats(Command.LIST).recordLatency(System.nanoTime() - start);
+    }
+
+    private void upload(String name, long size) throws IOException {
+        current = Command.UPLOAD;
+        CommandStats stats = generator.stats(Command.UPLOAD);
+        long start = System.nanoTime();
+        out.println("UPLOAD " + name + " " + size);
+        String response = readResponse();
+        if (!response.startsWith("READY_FOR_UPLOAD ")) {
+            stats.recordError();
+            return;
+        }
+        String[] parts = response.split(" ");
+        int dataPort = Integer.parseInt(parts[1]);
+        // Вузол-власник у кластері: адреса і порт його каналу керування
+        String dataHost = parts.length > 3 ? parts[2] : generator.getHost();
+        int controlPort = parts.length > 3 ? Integer.parseInt(parts[3]) : generator.getPort();
+
+        try (Socket dataSocket = openDataSocket(dataHost, dataPort)) {
+            TlsChannel dataTls = openDataTls(dataSocket, dataHost, controlPort);
+            stats.recordSetup(System.nanoTime() - start);
+
+            OutputStream data = dataTls != null ? dataTls.getOutputStream() : dataSocket.getOutputStream();
+            ThreadLocalRandom.current().nextBytes(transferBuffer);
+            long remaining = size;
+            while (remaining > 0) {
+                int chunk = (int) Math.min(remaining, transferBuffer.length);
+                data.write(transferBuffer, 0, chunk);
+                remaining -= chunk;
+            }
+            data.flush();
+            // Як і FtpClient: сервер закриває канал після фіксації (під TLS - з новим квитком сесії),
+            // а невдалу фіксацію повідомляє скиданням з'єднання
+            InputStream ack;
+            if (dataTls != null) {
+                ack = dataTls.getInputStream();
+            } else {
+                dataSocket.shutdownOutput();
+                ack = dataSocket.getInputStream();
+            }
+            while (ack.read(transferBuffer) != -1) {
+            }
+            if (dataTls != null) {
+                dataTls.close();
+            }
+        } catch (IOException e) {
+            stats.recordError();
+            return;
+        }
+        stats.recordLatency(System.nanoTime() - start);
+        generator.addBytesUploaded(size);
+
+        List<String> files = uploaded.get(inSubdirectory ? 1 : 0);
+        if (!files.contains(name)) {
+            files.add(name);
+        }
+    }
+
+    private void download(String name) throws IOException {
+        current = Command.DOWNLOAD;
+        CommandStats stats = generator.stats(Command.DOWNLOAD);
+        long start = System.nanoTime();
+        out.println("DOWNLOAD " + name);
+        String response = readResponse();
+        if (!response.startsWith("READY_FOR_DOWNLOAD ")) {
+            stats.recordError();
+            return;
+        }
+        String[] parts = response.split(" ");
+        long size = Long.parseLong(parts[1]);
+        int dataPort = Integer.parseInt(parts[2]);
+        String dataHost = parts.length > 4 ? parts[3] : generator.getHost();
+        int controlPort = parts.length > 4 ? Integer.parseInt(parts[4]) : generator.getPort();
+
+        long received = 0;
+        try (Socket dataSocket = openDataSocket(dataHost, dataPort)) {
+            TlsChannel dataTls = openDataTls(dataSocket, dataHost, controlPort);
+            stats.recordSetup(System.nanoTime() - start);
+
+            InputStream data = dataTls != null ? dataTls.getInputStream() : dataSocket.getInputStream();
+            int bytesRead;
+            while (received < size && (bytesRead = data.read(transferBuffer)) != -1) {
+                received += bytesRead;
+            }
+            if (dataTls != null) {
+                dataTls.close();
+            }
+        } catch (IOException e) {
+            stats.recordError();
+            return;
+        }
+        if (received != size) {
+            stats.recordError(); // Обірвана передача
+            return;
+        }
+        stats.recordLatency(System.nanoTime() - start);
+        generator.addBytesDownloaded(size);
+    }
+
+    private Socket openDataSocket(String host, int dataPort) throws IOException {
+        Socket dataSocket = SocketChannel.open().socket();
+        try {
+            dataSocket.connect(new InetSocketAddress(host, dataPort), generator.getTimeoutMillis());
+            dataSocket.setSoTimeout(generator.getTimeoutMillis());
+        } catch (IOException e) {
+            dataSocket.close();
+            throw e;
+        }
+        return dataSocket;
+    }
+
+    // Ключ кешу сесій - канал керування того вузла, що відкрив канал даних
+    private TlsChannel openDataTls(Socket dataSocket, String host, int controlPort) throws IOException {
+        if (generator.getTlsContext() == null) {
+            return null;
+        }
+        TlsChannel dataTls = TlsChannel.client(dataSocket.getChannel(), generator.getTlsContext(), host, controlPort);
+        dataTls.setReadTimeout(generator.getTimeoutMillis());
+        dataTls.handshake();
+        return dataTls;
+    }
+
+    private String readResponse() throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("Server closed control connection.");
+        }
+        return line;
+    }
+
+    private void thinkTime() {
+        long millis = generator.nextThinkTimeMillis();
+        if (millis > 0) {
+            sleep(millis);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
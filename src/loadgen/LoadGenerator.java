@@ -0,0 +1,270 @@
+package loadgen;
+
+import common.Constants;
+import common.TlsChannel;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import javax.net.ssl.SSLContext;
+
+// Безголовий генератор навантаження для FtpServer: N скриптованих клієнтів з заданою сумішшю команд.
+// Запуск: java -cp out loadgen.LoadGenerator [key=value ...], наприклад
+//   clients=50 duration=7200 mix=LIST:30,CD:20,MKDIR:10,UPLOAD:20,DOWNLOAD:20 sizes=1024:1048576 think=0:50 serverPid=12345
+// serverPid дозволяє стежити за дескрипторами і потоками сервера (Linux /proc) під час довгих прогонів.
+public class LoadGenerator {
+    private final Map<String, String> options;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final int clients;
+    private final long durationSeconds;
+    private final long reportSeconds;
+    private final long minFileSize;
+    private final long maxFileSize;
+    private final long minThinkMillis;
+    private final long maxThinkMillis;
+    private final int timeoutMillis; // Підключення і читання; прострочене - помилка команди
+    private final String serverPid;
+    private final SSLContext tlsContext;
+
+    private final LoadClient.Command[] mixTable; // Команди, повторені пропорційно до ваги
+    private final Map<LoadClient.Command, CommandStats> stats = new EnumMap<>(LoadClient.Command.class);
+    private final AtomicLong bytesUploaded = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private volatile boolean running = true;
+
+    public LoadGenerator(Map<String, String> options) throws IOException {
+        this.options = options;
+        host = option("host", Constants.SERVER_ADDRESS);
+        port = Integer.parseInt(option("port", String.valueOf(Constants.CONTROL_PORT)));
+        username = option("user", "user");
+        password = option("pass", "pass");
+        clients = Integer.parseInt(option("clients", "10"));
+        durationSeconds = Long.parseLong(option("duration", "60"));
+        reportSeconds = Long.parseLong(option("report", "10"));
+        long[] sizes = range(option("sizes", "1024:1048576"));
+        minFileSize = sizes[0];
+        maxFileSize = sizes[1];
+        long[] think = range(option("think", "0:100"));
+        minThinkMillis = think[0];
+        maxThinkMillis = think[1];
+        timeoutMillis = Integer.parseInt(option("timeout", "30000"));
+        serverPid = options.get("serverPid");
+        tlsContext = TlsChannel.createContext(false, true);
+        mixTable = parseMix(option("mix", "AUTH:5,LIST:30,CD:20,MKDIR:10,UPLOAD:15,DOWNLOAD:20"));
+
+        for (LoadClient.Command command : LoadClient.Command.values()) {
+            stats.put(command, new CommandStats());
+        }
+    }
+
+    public void run() throws InterruptedException {
+        System.out.println("Load: " + clients + " clients against " + host + ":" + port + (tlsContext != null ? " (TLS)" : "")
+                + " for " + durationSeconds + "s, file sizes " + minFileSize + ".." + maxFileSize
+                + " bytes, think time " + minThinkMillis + ".." + maxThinkMillis + " ms");
+
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            threads[i] = new Thread(new LoadClient(i, this), "load-client-" + i);
+            threads[i].setDaemon(true); // Клієнт, що завис на сервері, не має тримати JVM після підсумку
+            threads[i].start();
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + durationSeconds * 1_000_000_000L;
+        long lastReport = start;
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(Math.min(reportSeconds * 1000, Math.max(1, (deadline - System.nanoTime()) / 1_000_000)));
+            long now = System.nanoTime();
+            report(false, (now - start) / 1_000_000_000L, (now - lastReport) / 1e9);
+            lastReport = now;
+        }
+
+        running = false;
+        // Одне спільне очікування на всіх, а не по 10 с на кожного
+        long joinDeadline = System.nanoTime() + 10_000_000_000L;
+        for (Thread thread : threads) {
+            long remainingMillis = (joinDeadline - System.nanoTime()) / 1_000_000;
+            if (remainingMillis <= 0) {
+                break;
+            }
+            thread.join(remainingMillis);
+        }
+        report(true, (System.nanoTime() - start) / 1_000_000_000L, (System.nanoTime() - start) / 1e9);
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    CommandStats stats(LoadClient.Command command) {
+        return stats.get(command);
+    }
+
+    LoadClient.Command nextCommand() {
+        return mixTable[ThreadLocalRandom.current().nextInt(mixTable.length)];
+    }
+
+    // Лог-рівномірний розподіл: дрібних файлів багато, великих мало
+    long nextFileSize() {
+        if (minFileSize >= maxFileSize) {
+            return minFileSize;
+        }
+        double logMin = Math.log(Math.max(1, minFileSize));
+        double logMax = Math.log(maxFileSize);
+        return (long) Math.exp(logMin + ThreadLocalRandom.current().nextDouble() * (logMax - logMin));
+    }
+
+    long nextThinkTimeMillis() {
+        if (minThinkMillis >= maxThinkMillis) {
+            return minThinkMillis;
+        }
+        return ThreadLocalRandom.current().nextLong(minThinkMillis, maxThinkMillis + 1);
+    }
+
+    void addBytesUploaded(long bytes) {
+        bytesUploaded.addAndGet(bytes);
+    }
+
+    void addBytesDownloaded(long bytes) {
+        bytesDownloaded.addAndGet(bytes);
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    String getPassword() {
+        return password;
+    }
+
+    int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    SSLContext getTlsContext() {
+        return tlsContext;
+    }
+
+    private void report(boolean total, long elapsedSeconds, double windowSeconds) {
+        long uploaded = bytesUploaded.getAndSet(0);
+        long downloaded = bytesDownloaded.getAndSet(0);
+        StringBuilder header = new StringBuilder();
+        header.append(String.format("[%6ds] %s", elapsedSeconds, total ? "TOTAL" : "interval"));
+        if (!total) {
+            header.append(String.format(" up %.1f MB/s, down %.1f MB/s", uploaded / 1e6 / windowSeconds, downloaded / 1e6 / windowSeconds));
+        }
+        header.append(", client fds ").append(countEntries(Paths.get("/proc/self/fd")));
+        if (serverPid != null) {
+            header.append(", server fds ").append(countEntries(Paths.get("/proc", serverPid, "fd")))
+                    .append(", server threads ").append(serverThreads());
+        }
+        System.out.println(header);
+        System.out.println(String.format("  %-9s %9s %9s %9s %9s %9s %9s %7s %9s %9s %9s",
+                "command", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors", "setup p50", "p99", "p999"));
+
+        for (LoadClient.Command command : LoadClient.Command.values()) {
+            CommandStats commandStats = stats.get(command);
+            commandStats.roll(); // Для підсумку - дописує хвіст після останнього інтервалу
+            LatencyHistogram latency = commandStats.getLatency(total);
+            LatencyHistogram setup = commandStats.getSetup(total);
+            long count = latency.count();
+            long errors = commandStats.getErrors(total);
+            if (count == 0 && errors == 0) {
+                continue;
+            }
+            String line = String.format("  %-9s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %7d", command, count, count / windowSeconds,
+                    latency.percentileMicros(50) / 1000.0, latency.percentileMicros(99) / 1000.0,
+                    latency.percentileMicros(99.9) / 1000.0, latency.maxMicros() / 1000.0, errors);
+            if (setup.count() > 0) {
+                line += String.format(" %9.2f %9.2f %9.2f", setup.percentileMicros(50) / 1000.0,
+                        setup.percentileMicros(99) / 1000.0, setup.percentileMicros(99.9) / 1000.0);
+            }
+            System.out.println(line);
+        }
+    }
+
+    private String serverThreads() {
+        try {
+            List<String> status = Files.readAllLines(Paths.get("/proc", serverPid, "status"));
+            for (String line : status) {
+                if (line.startsWith("Threads:")) {
+                    return line.substring("Threads:".length()).trim();
+                }
+            }
+        } catch (IOException e) {
+            // Немає /proc або процес завершився
+        }
+        return "n/a";
+    }
+
+    private static String countEntries(Path directory) {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return String.valueOf(entries.count());
+        } catch (IOException e) {
+            return "n/a";
+        }
+    }
+
+    private String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    private static long[] range(String value) {
+        String[] bounds = value.split(":");
+        long min = Long.parseLong(bounds[0]);
+        long max = bounds.length > 1 ? Long.parseLong(bounds[1]) : min;
+        return new long[]{min, Math.max(min, max)};
+    }
+
+    private static LoadClient.Command[] parseMix(String mix) {
+        List<LoadClient.Command> table = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split(":");
+            LoadClient.Command command = LoadClient.Command.valueOf(parts[0].trim().toUpperCase());
+            if (command == LoadClient.Command.CONNECT) {
+                throw new IllegalArgumentException("CONNECT is not a mix command.");
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            for (int i = 0; i < weight; i++) {
+                table.add(command);
+            }
+        }
+        if (table.isEmpty()) {
+            throw new IllegalArgumentException("Command mix is empty.");
+        }
+        return table.toArray(new LoadClient.Command[0]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                System.err.println("Usage: LoadGenerator [host=] [port=] [user=] [pass=] [clients=] [duration=s] [report=s]"
+                        + " [mix=CMD:weight,...] [sizes=min:max] [think=minMs:maxMs] [timeout=ms] [serverPid=]");
+                System.exit(1);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+}
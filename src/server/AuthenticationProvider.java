@@ -0,0 +1,10 @@
+package server;
+
+// Джерело облікових записів для команди AUTH
+public interface AuthenticationProvider {
+    // Повертає обліковий запис або null, якщо ім'я чи пароль невірні
+    UserAccount authenticate(String username, String password);
+
+    // Обліковий запис без перевірки пароля - для сесій між вузлами кластера
+    UserAccount findAccount(String username);
+}
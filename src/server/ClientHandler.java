@@ -1,46 +1,80 @@
 package server;
 
-import java.io.BufferedReader;
+import common.CommandArgs;
+import common.Constants;
+import common.TlsChannel;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.file.*;
-import java.util.stream.Collectors;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import javax.net.ssl.SSLContext;
 
 public class ClientHandler implements Runnable {
     private Socket clientControlSocket;
-    private BufferedReader in;
-    private PrintWriter out;
+    private ControlCodec codec;
     private Path currentDirectory;
     private Path rootDirectory;
-    private boolean authenticated = false;
+    private FileCache fileCache;
+    private SSLContext tlsContext;
+    private TlsChannel tls;
+    private AuthenticationProvider authProvider;
+    private UserAccount account; // null до успішної автентифікації
+    private Path serverRoot;
+    private Cluster cluster; // null в автономному режимі
+    private boolean peerSession = false; // Сесія від іншого вузла: виконуємо лише локально, без пересилання
+    private String peerChallenge; // Виданий виклик PEER, чекає на відповідь; одноразовий
+    private Map<String, PeerSession> peers = new HashMap<>(); // З'єднання до вузлів-власників за id
+    private UploadCommitter committer;
 
-    public ClientHandler(Socket clientControlSocket, Path rootDirectory) {
+    public ClientHandler(Socket clientControlSocket, Path rootDirectory, FileCache fileCache, SSLContext tlsContext,
+                         AuthenticationProvider authProvider, Cluster cluster,
+                         UploadCommitter committer) {
         this.clientControlSocket = clientControlSocket;
         this.rootDirectory = rootDirectory;
+        this.serverRoot = rootDirectory;
+        this.cluster = cluster;
+        this.committer = committer;
+        this.fileCache = fileCache;
+        this.tlsContext = tlsContext;
+        this.authProvider = authProvider;
         this.currentDirectory = rootDirectory;
-        try {
-            in = new BufferedReader(new InputStreamReader(clientControlSocket.getInputStream()));
-            out = new PrintWriter(clientControlSocket.getOutputStream(), true);
-        } catch (IOException e) {
-            System.err.println("Error initializing ClientHandler: " + e.getMessage());
-        }
     }
 
     @Override
     public void run() {
-        String commandLine;
+        ControlCodec.Command command;
         try {
-            while ((commandLine = in.readLine()) != null) {
-                System.out.println("Received command from " + clientControlSocket.getInetAddress().getHostAddress() + ": " + commandLine);
-                processCommand(commandLine);
+            // Handshake виконується в потоці клієнта, щоб не блокувати цикл accept
+            if (tlsContext != null) {
+                tls = TlsChannel.server(clientControlSocket.getChannel(), tlsContext);
+                tls.handshake();
+                codec = new ControlCodec(tls.getInputStream(), tls.getOutputStream());
+            } else {
+                codec = new ControlCodec(clientControlSocket.getInputStream(), clientControlSocket.getOutputStream());
+            }
+            while ((command = codec.readCommand()) != null) {
+                if (Constants.VERBOSE_LOGGING) {
+                    log("Received command from " + clientControlSocket.getInetAddress().getHostAddress() + ": " + codec.currentLine());
+                }
+                processCommand(command);
             }
         } catch (IOException e) {
             System.out.println("Client disconnected: " + clientControlSocket.getInetAddress().getHostAddress());
         } finally {
+            peers.values().forEach(PeerSession::close);
             try {
+                if (tls != null) {
+                    tls.close();
+                }
                 clientControlSocket.close();
             } catch (IOException e) {
                 System.err.println("Error closing client socket: " + e.getMessage());
@@ -48,111 +82,272 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    private void processCommand(String commandLine) {
-        String[] parts = commandLine.split(" ", 2);
-        String command = parts[0].toUpperCase();
-        String args = parts.length > 1 ? parts[1] : "";
-
-        if (!authenticated && !command.equals("AUTH")) {
-            System.out.println("Client not authenticated. Command ignored.");
-            out.println("ERROR: Not authenticated.");
+    private void processCommand(ControlCodec.Command command) throws IOException {
+        if (account == null && command != ControlCodec.Command.AUTH && command != ControlCodec.Command.PEER) {
+            log("Client not authenticated. Command ignored.");
+            codec.writeLine("ERROR: Not authenticated.");
             return;
         }
 
         switch (command) {
-            case "AUTH":
-                authenticate(args);
+            case AUTH:
+                authenticate(codec.nextArg(), codec.nextArg());
+                break;
+            case UPLOAD:
+                handleUploadRequest();
                 break;
-            case "UPLOAD":
-                handleUploadRequest(args);
+            case DOWNLOAD:
+                handleDownloadRequest(codec.remainingArg());
                 break;
-            case "DOWNLOAD":
-                handleDownloadRequest(args);
+            case MKDIR:
+                createDirectory(codec.remainingArg());
                 break;
-            case "MKDIR":
-                createDirectory(args);
+            case RMDIR:
+                removeDirectory(codec.remainingArg());
                 break;
-            case "RMDIR":
-                removeDirectory(args);
+            case MVDIR:
+                moveDirectory();
                 break;
-            case "MVDIR":
-                moveDirectory(args);
+            case LIST:
+                listDirectory(codec.remainingArg());
                 break;
-            case "LIST":
-                listDirectory();
+            case CD:
+                changeDirectory(codec.remainingArg());
                 break;
-            case "CD":
-                changeDirectory(args);
+            case PEER:
+                authenticatePeer(codec.nextArg(), codec.nextArg());
                 break;
             default:
-                System.out.println("Unknown command: " + command);
-                out.println("ERROR: Unknown command.");
+                log("Unknown command: " + codec.currentLine());
+                codec.writeLine("ERROR: Unknown command.");
                 break;
         }
     }
 
-    private void authenticate(String args) {
-        String[] creds = args.split(" ");
-        if (creds.length == 2 && creds[0].equals("user") && creds[1].equals("pass")) {
-            authenticated = true;
-            System.out.println("Client authenticated successfully.");
-            out.println("OK: Authenticated successfully.");
-        } else {
-            System.out.println("Authentication failed for user: " + (creds.length > 0 ? creds[0] : ""));
-            authenticated = false;
-            out.println("ERROR: Authentication failed.");
+    // Журналювання на кожну команду вимкнене за замовчуванням (-Dftp.verbose=true)
+    private static void log(String message) {
+        if (Constants.VERBOSE_LOGGING) {
+            System.out.println(message);
+        }
+    }
+
+    private void authenticate(String username, String password) throws IOException {
+        UserAccount authenticatedAccount = null;
+        if (password != null && !codec.hasMoreArgs()) {
+            authenticatedAccount = authProvider.authenticate(username, password);
+        }
+        if (authenticatedAccount == null) {
+            log("Authentication failed for user: " + (username != null ? username : ""));
+            account = null;
+            codec.writeLine("ERROR: Authentication failed.");
+            return;
+        }
+        startSession(authenticatedAccount);
+    }
+
+    // Сесія від іншого вузла кластера від імені вже автентифікованого там користувача:
+    //   PEER <username>          -> CHALLENGE <виклик>
+    //   PEER <username> <HMAC>   -> OK
+    // Приймається лише через TLS і з адрес вузлів із конфігурації кластера.
+    private void authenticatePeer(String username, String response) throws IOException {
+        String challenge = peerChallenge;
+        peerChallenge = null;
+        UserAccount peerAccount = null;
+        if (cluster != null && tls != null && username != null && !codec.hasMoreArgs()
+                && cluster.isNodeAddress(clientControlSocket.getInetAddress())) {
+            if (response == null) {
+                peerChallenge = cluster.newChallenge();
+                codec.writeLine("CHALLENGE " + peerChallenge);
+                return;
+            }
+            if (challenge != null && cluster.checkResponse(challenge, username, response)) {
+                peerAccount = authProvider.findAccount(username);
+            }
+        }
+        if (peerAccount == null) {
+            System.err.println("Rejected peer session from " + clientControlSocket.getInetAddress().getHostAddress());
+            account = null;
+            codec.writeLine("ERROR: Authentication failed.");
+            return;
+        }
+        peerSession = true;
+        startSession(peerAccount);
+    }
+
+    private void startSession(UserAccount authenticatedAccount) throws IOException {
+        if (cluster != null && !cluster.canEnforceQuota(serverRoot.relativize(authenticatedAccount.getHomeDirectory()),
+                authenticatedAccount.getQuotaBytes())) {
+            System.err.println("Rejected " + authenticatedAccount.getUsername()
+                    + ": quota on a home directory spanning cluster nodes cannot be enforced.");
+            account = null;
+            codec.writeLine("ERROR: Quota cannot be enforced for this account in cluster mode.");
+            return;
+        }
+        try {
+            // Домашня директорія і облік місця - лише на вузлі-власнику; решта вузлів усе пересилає йому
+            if (!isRemote(ownerOf(authenticatedAccount.getHomeDirectory()))) {
+                authenticatedAccount.loadUsage(); // Створює домашню директорію за потреби
+            }
+        } catch (IOException e) {
+            System.err.println("Error preparing home directory for " + authenticatedAccount.getUsername() + ": " + e.getMessage());
+            account = null;
+            codec.writeLine("ERROR: Could not prepare home directory.");
+            return;
+        }
+        if (account != authenticatedAccount) {
+            // Сесії до власників відкриті від імені попереднього користувача
+            peers.values().forEach(PeerSession::close);
+            peers.clear();
+        }
+        account = authenticatedAccount;
+        // Сесія обмежена домашньою директорією користувача
+        rootDirectory = account.getHomeDirectory();
+        currentDirectory = rootDirectory;
+        log("Client authenticated successfully as " + account.getUsername() + ".");
+        codec.writeLine("OK: Authenticated successfully.");
+    }
+
+    // Вузол-власник шляху; null, якщо кластер вимкнено, сесія від іншого вузла або це корінь сервера
+    private Cluster.Node ownerOf(Path path) {
+        if (cluster == null || peerSession) {
+            return null;
+        }
+        return cluster.ownerOf(serverRoot.relativize(path));
+    }
+
+    private boolean isRemote(Cluster.Node owner) {
+        return owner != null && !cluster.isLocal(owner);
+    }
+
+    // Шлях для сесії на власнику, де поточна директорія - домашня
+    private String peerPath(Path path) {
+        String relative = rootDirectory.relativize(path).toString().replace(File.separatorChar, '/');
+        return CommandArgs.quote(relative.isEmpty() ? "." : relative);
+    }
+
+    private PeerSession peer(Cluster.Node owner) throws IOException {
+        PeerSession peer = peers.get(owner.getId());
+        if (peer == null) {
+            if (!cluster.isAvailable(owner)) {
+                throw new IOException("Node " + owner.getId() + " failed recently, not retrying yet.");
+            }
+            try {
+                peer = new PeerSession(owner, cluster, tlsContext, account.getUsername());
+            } catch (IOException e) {
+                cluster.markUnavailable(owner);
+                throw e;
+            }
+            peers.put(owner.getId(), peer);
+        }
+        return peer;
+    }
+
+    private void dropPeer(Cluster.Node owner, IOException e) {
+        System.err.println("Error forwarding to node " + owner.getId() + ": " + e.getMessage());
+        PeerSession peer = peers.remove(owner.getId());
+        if (peer != null) {
+            peer.close();
+        }
+    }
+
+    // Пересилає команду власнику і повертає його відповідь
+    private String forward(Cluster.Node owner, String line) {
+        try {
+            log("Forwarding to node " + owner.getId() + ": " + line);
+            return peer(owner).request(line);
+        } catch (IOException e) {
+            dropPeer(owner, e);
+            return "ERROR: Owner node " + owner.getId() + " unavailable.";
         }
     }
 
-    private void handleUploadRequest(String args) {
-        String[] fileInfo = args.split(" ");
-        if (fileInfo.length != 2) {
+    // UPLOAD/DOWNLOAD на іншому вузлі: клієнт під'єднується до каналу даних власника напряму,
+    // тому до відповіді READY_* додаються адреса власника і порт його каналу керування (ключ TLS-сесії)
+    private void forwardTransfer(Cluster.Node owner, String line) throws IOException {
+        String response = forward(owner, line);
+        if (response.startsWith("READY_FOR_")) {
+            response += " " + owner.getHost() + " " + owner.getPort();
+        }
+        codec.writeLine(response);
+    }
+
+    private void handleUploadRequest() throws IOException {
+        String filename = codec.nextArg();
+        String sizeArg = codec.nextArg();
+        if (sizeArg == null || codec.hasMoreArgs()) {
             System.err.println("Invalid UPLOAD command format. Expected: UPLOAD <filename> <filesize>");
-            out.println("ERROR: Invalid UPLOAD command format.");
+            codec.writeLine("ERROR: Invalid UPLOAD command format.");
             return;
         }
-        String filename = fileInfo[0];
         long filesize;
         try {
-            filesize = Long.parseLong(fileInfo[1]);
+            filesize = Long.parseLong(sizeArg);
+            if (filesize < 0) {
+                throw new NumberFormatException("negative size"); // Інакше "резерв" зменшив би зайняте місце
+            }
         } catch (NumberFormatException e) {
-            System.err.println("Invalid filesize for UPLOAD command: " + fileInfo[1]);
-            out.println("ERROR: Invalid file size.");
+            System.err.println("Invalid filesize for UPLOAD command: " + sizeArg);
+            codec.writeLine("ERROR: Invalid file size.");
             return;
         }
 
         Path filePath = currentDirectory.resolve(filename).normalize();
         if (!filePath.startsWith(rootDirectory)) {
             System.err.println("Attempted to upload outside of root directory: " + filePath);
-            out.println("ERROR: Access denied.");
+            codec.writeLine("ERROR: Access denied.");
+            return;
+        }
+        Cluster.Node owner = ownerOf(filePath);
+        if (isRemote(owner)) {
+            forwardTransfer(owner, "UPLOAD " + peerPath(filePath) + " " + filesize);
+            return;
+        }
+
+        // Резервуємо різницю з поточним файлом; DataTransferHandler звіряє її з файлом, який справді
+        // замінено при фіксації (паралельне завантаження за тим самим шляхом могло його змінити)
+        long reserved = filesize - UserAccount.sizeOf(filePath);
+        if (!account.tryReserve(reserved)) {
+            System.err.println("Quota exceeded for " + account.getUsername() + ": " + filename + " (" + filesize + " bytes)");
+            codec.writeLine("ERROR: Quota exceeded.");
             return;
         }
 
-        try (ServerSocket dataServerSocket = new ServerSocket(0)) { // Створюємо ServerSocket на випадковому вільному порту (порт 0)
-            int dataPort = dataServerSocket.getLocalPort();
-            System.out.println("Preparing for file upload: " + filename + " (" + filesize + " bytes) on port " + dataPort);
-            out.println("READY_FOR_UPLOAD " + dataPort); // Повідомляємо клієнта про готовність та порт для даних
+        boolean ready = false;
+        try (ServerSocketChannel dataServerChannel = ServerSocketChannel.open().bind(new InetSocketAddress(0))) { // Випадковий вільний порт (порт 0)
+            int dataPort = dataServerChannel.socket().getLocalPort();
+            log("Preparing for file upload: " + filename + " (" + filesize + " bytes) on port " + dataPort);
+            codec.writeLine("READY_FOR_UPLOAD " + dataPort); // Повідомляємо клієнта про готовність та порт для даних
+            codec.flush(); // Клієнт має отримати порт до того, як ми заблокуємось на accept
+            ready = true;
 
-            Socket dataSocket = dataServerSocket.accept(); // Чекаємо на підключення клієнта до цього порту
-            System.out.println("Data channel established for upload from " + dataSocket.getInetAddress().getHostAddress() + ".");
+            Socket dataSocket = acceptDataConnection(dataServerChannel); // Чекаємо на підключення клієнта до цього порту
+            log("Data channel established for upload from " + dataSocket.getInetAddress().getHostAddress() + ".");
             // Тепер передаємо прийнятий dataSocket до DataTransferHandler
-            new Thread(new DataTransferHandler(dataSocket, filePath, filesize, DataTransferHandler.TransferMode.UPLOAD)).start();
+            new Thread(new DataTransferHandler(dataSocket, filePath, filesize, DataTransferHandler.TransferMode.UPLOAD, fileCache, tlsContext, account, reserved, committer)).start();
         } catch (IOException e) {
+            account.release(reserved);
             System.err.println("Error setting up data channel for upload: " + e.getMessage());
-            out.println("ERROR: Could not set up data channel for upload.");
+            if (!ready) { // Після READY клієнт відповіді вже не чекає
+                codec.writeLine("ERROR: Could not set up data channel for upload.");
+            }
         }
     }
 
-    private void handleDownloadRequest(String filename) {
+    private void handleDownloadRequest(String filename) throws IOException {
         Path filePath = currentDirectory.resolve(filename).normalize();
         if (!filePath.startsWith(rootDirectory)) {
             System.err.println("Attempted to download outside of root directory: " + filePath);
-            out.println("ERROR: Access denied.");
+            codec.writeLine("ERROR: Access denied.");
+            return;
+        }
+        Cluster.Node owner = ownerOf(filePath);
+        if (isRemote(owner)) {
+            forwardTransfer(owner, "DOWNLOAD " + peerPath(filePath));
             return;
         }
         if (!Files.exists(filePath) || !Files.isRegularFile(filePath)) {
             System.err.println("File not found or not a regular file: " + filePath);
-            out.println("ERROR: File not found or not a regular file.");
+            codec.writeLine("ERROR: File not found or not a regular file.");
             return;
         }
 
@@ -161,113 +356,203 @@ public class ClientHandler implements Runnable {
             filesize = Files.size(filePath);
         } catch (IOException e) {
             System.err.println("Error getting file size: " + e.getMessage());
-            out.println("ERROR: Could not get file size.");
+            codec.writeLine("ERROR: Could not get file size.");
             return;
         }
 
-        try (ServerSocket dataServerSocket = new ServerSocket(0)) { // Створюємо ServerSocket на випадковому вільному порту
-            int dataPort = dataServerSocket.getLocalPort();
-            System.out.println("Preparing for file download: " + filename + " (" + filesize + " bytes) on port " + dataPort);
-            out.println("READY_FOR_DOWNLOAD " + filesize + " " + dataPort); // Повідомляємо клієнта про готовність, розмір та порт
+        boolean ready = false;
+        try (ServerSocketChannel dataServerChannel = ServerSocketChannel.open().bind(new InetSocketAddress(0))) { // Випадковий вільний порт
+            int dataPort = dataServerChannel.socket().getLocalPort();
+            log("Preparing for file download: " + filename + " (" + filesize + " bytes) on port " + dataPort);
+            codec.writeLine("READY_FOR_DOWNLOAD " + filesize + " " + dataPort); // Повідомляємо клієнта про готовність, розмір та порт
+            codec.flush();
+            ready = true;
 
-            Socket dataSocket = dataServerSocket.accept(); // Чекаємо на підключення клієнта до цього порту
-            System.out.println("Data channel established for download from " + dataSocket.getInetAddress().getHostAddress() + ".");
+            Socket dataSocket = acceptDataConnection(dataServerChannel); // Чекаємо на підключення клієнта до цього порту
+            log("Data channel established for download from " + dataSocket.getInetAddress().getHostAddress() + ".");
             // Тепер передаємо прийнятий dataSocket до DataTransferHandler
-            new Thread(new DataTransferHandler(dataSocket, filePath, filesize, DataTransferHandler.TransferMode.DOWNLOAD)).start();
+            new Thread(new DataTransferHandler(dataSocket, filePath, filesize, DataTransferHandler.TransferMode.DOWNLOAD, fileCache, tlsContext, account, 0, committer)).start();
         } catch (IOException e) {
             System.err.println("Error setting up data channel for download: " + e.getMessage());
-            out.println("ERROR: Could not set up data channel for download.");
+            if (!ready) {
+                codec.writeLine("ERROR: Could not set up data channel for download.");
+            }
         }
     }
 
-    private void createDirectory(String dirName) {
+    // Клієнт, що не під'єднався до порту даних, не має блокувати сесію (у кластері - сесію вузла-власника,
+    // через яку йдуть команди інших сесій). accept адаптера сокета, на відміну від каналу, зважає на SO_TIMEOUT.
+    private static Socket acceptDataConnection(ServerSocketChannel dataServerChannel) throws IOException {
+        dataServerChannel.socket().setSoTimeout(Constants.DATA_ACCEPT_TIMEOUT_MILLIS);
+        return dataServerChannel.socket().accept();
+    }
+
+    private void createDirectory(String dirName) throws IOException {
         Path newDirPath = currentDirectory.resolve(dirName).normalize();
         if (!newDirPath.startsWith(rootDirectory)) {
             System.err.println("Attempted to create directory outside of root: " + newDirPath);
-            out.println("ERROR: Access denied.");
+            codec.writeLine("ERROR: Access denied.");
+            return;
+        }
+        Cluster.Node owner = ownerOf(newDirPath);
+        if (isRemote(owner)) {
+            codec.writeLine(forward(owner, "MKDIR " + peerPath(newDirPath)));
             return;
         }
         try {
             Files.createDirectories(newDirPath);
-            System.out.println("Directory created: " + newDirPath.getFileName());
-            out.println("OK: Directory created.");
+            log("Directory created: " + newDirPath.getFileName());
+            codec.writeLine("OK: Directory created.");
         } catch (IOException e) {
             System.err.println("Error creating directory " + dirName + ": " + e.getMessage());
-            out.println("ERROR: Could not create directory.");
+            codec.writeLine("ERROR: Could not create directory.");
         }
     }
 
-    private void removeDirectory(String dirName) {
+    private void removeDirectory(String dirName) throws IOException {
         Path targetPath = currentDirectory.resolve(dirName).normalize();
         if (!targetPath.startsWith(rootDirectory)) {
             System.err.println("Attempted to remove directory outside of root: " + targetPath);
-            out.println("ERROR: Access denied.");
+            codec.writeLine("ERROR: Access denied.");
+            return;
+        }
+        Cluster.Node owner = ownerOf(targetPath);
+        if (isRemote(owner)) {
+            codec.writeLine(forward(owner, "RMDIR " + peerPath(targetPath)));
             return;
         }
         try {
             if (Files.exists(targetPath) && Files.isDirectory(targetPath)) {
-                Files.walk(targetPath)
-                        .sorted(java.util.Comparator.reverseOrder())
-                        .map(Path::toFile)
-                        .forEach(java.io.File::delete);
-                System.out.println("Directory removed: " + targetPath.getFileName());
-                out.println("OK: Directory removed.");
+                committer.checkpoint(); // Інакше відновлення після збою повернуло б щойно завантажені файли
+                long freed = 0;
+                try (Stream<Path> paths = Files.walk(targetPath)) {
+                    for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                        long size = UserAccount.sizeOf(path);
+                        if (path.toFile().delete()) {
+                            freed += size;
+                        }
+                    }
+                }
+                account.release(freed); // Квота оновлюється лише на розмір видаленого піддерева
+                fileCache.invalidateTree(targetPath);
+                log("Directory removed: " + targetPath.getFileName());
+                codec.writeLine("OK: Directory removed.");
             } else {
                 System.err.println("Directory not found or not a directory: " + dirName);
-                out.println("ERROR: Directory not found or not a directory.");
+                codec.writeLine("ERROR: Directory not found or not a directory.");
             }
         } catch (IOException e) {
             System.err.println("Error removing directory " + dirName + ": " + e.getMessage());
-            out.println("ERROR: Could not remove directory.");
+            codec.writeLine("ERROR: Could not remove directory.");
         }
     }
 
-    private void moveDirectory(String args) {
-        String[] paths = args.split(" ");
-        if (paths.length != 2) {
+    private void moveDirectory() throws IOException {
+        String oldPathName = codec.nextArg();
+        String newPathName = codec.nextArg();
+        if (newPathName == null || codec.hasMoreArgs()) {
             System.err.println("Invalid MVDIR command format. Expected: MVDIR <oldPath> <newPath>");
-            out.println("ERROR: Invalid MVDIR command format.");
+            codec.writeLine("ERROR: Invalid MVDIR command format.");
             return;
         }
-        String oldPathName = paths[0];
-        String newPathName = paths[1];
 
         Path oldPath = currentDirectory.resolve(oldPathName).normalize();
         Path newPath = currentDirectory.resolve(newPathName).normalize();
 
         if (!oldPath.startsWith(rootDirectory) || !newPath.startsWith(rootDirectory)) {
             System.err.println("Attempted to move path outside of root: " + oldPath + " -> " + newPath);
-            out.println("ERROR: Access denied.");
+            codec.writeLine("ERROR: Access denied.");
+            return;
+        }
+        Cluster.Node oldOwner = ownerOf(oldPath);
+        Cluster.Node newOwner = ownerOf(newPath);
+        if (oldOwner != newOwner) {
+            System.err.println("Attempted to move across cluster nodes: " + oldPath + " -> " + newPath);
+            codec.writeLine("ERROR: Cannot move between cluster nodes.");
+            return;
+        }
+        if (isRemote(oldOwner)) {
+            codec.writeLine(forward(oldOwner, "MVDIR " + peerPath(oldPath) + " " + peerPath(newPath)));
             return;
         }
 
         try {
+            // Переміщення всередині домашньої директорії не змінює зайняте місце, крім перезаписаного файлу
+            long replaced = oldPath.equals(newPath) ? 0 : UserAccount.sizeOf(newPath);
+            committer.checkpoint(); // Відновлення з журналу не має відтворити файли на старому місці
             Files.move(oldPath, newPath, StandardCopyOption.REPLACE_EXISTING);
-            System.out.println("Moved: " + oldPath.getFileName() + " to " + newPath.getFileName());
-            out.println("OK: Moved successfully.");
+            account.release(replaced);
+            fileCache.invalidateTree(oldPath);
+            fileCache.invalidateTree(newPath);
+            log("Moved: " + oldPath.getFileName() + " to " + newPath.getFileName());
+            codec.writeLine("OK: Moved successfully.");
         } catch (IOException e) {
             System.err.println("Error moving " + oldPathName + " to " + newPathName + ": " + e.getMessage());
-            out.println("ERROR: Could not move.");
+            codec.writeLine("ERROR: Could not move.");
         }
     }
 
-    private void listDirectory() {
-        try {
-            String content = Files.list(currentDirectory)
-                    .map(Path::getFileName)
+    // LIST [path]: без аргументу - поточна директорія (аргумент використовують вузли кластера)
+    private void listDirectory(String dirName) throws IOException {
+        Path targetPath = currentDirectory.resolve(dirName).normalize();
+        if (!targetPath.startsWith(rootDirectory)) {
+            System.err.println("Attempted to list directory outside of root: " + targetPath);
+            codec.writeLine("ERROR: Access denied.");
+            return;
+        }
+        Cluster.Node owner = ownerOf(targetPath);
+        if (isRemote(owner)) {
+            try {
+                List<String> entries = peer(owner).requestList("LIST " + peerPath(targetPath));
+                writeListing(entries);
+            } catch (IOException e) {
+                dropPeer(owner, e);
+                codec.writeLine("ERROR: Owner node " + owner.getId() + " unavailable.");
+            }
+            return;
+        }
+
+        Set<String> names = new LinkedHashSet<>();
+        try (Stream<Path> entries = Files.list(targetPath)) { // Потік тримає дескриптор директорії, закриваємо його
+            entries.map(Path::getFileName)
                     .map(Path::toString)
-                    .collect(Collectors.joining("\n"));
-            System.out.println("Listing directory: " + currentDirectory.toAbsolutePath());
-            out.println("LIST_START");
-            out.println(content);
-            out.println("LIST_END");
+                    .forEach(names::add);
         } catch (IOException e) {
             System.err.println("Error listing directory: " + e.getMessage());
-            out.println("ERROR: Could not list directory.");
+            codec.writeLine("ERROR: Could not list directory.");
+            return;
+        }
+        if (cluster != null && !peerSession && owner == null) {
+            // Корінь сервера розподілений між усіма вузлами: об'єднуємо їхні списки
+            for (Cluster.Node node : cluster.getNodes()) {
+                if (cluster.isLocal(node)) {
+                    continue;
+                }
+                try {
+                    List<String> remote = peer(node).requestList("LIST " + peerPath(targetPath));
+                    if (remote != null) {
+                        names.addAll(remote);
+                    }
+                } catch (IOException e) {
+                    dropPeer(node, e); // Недоступний вузол не ламає список решти
+                }
+            }
+        }
+        log("Listing directory: " + targetPath.toAbsolutePath());
+        writeListing(List.copyOf(names));
+    }
+
+    private void writeListing(List<String> names) throws IOException {
+        if (names == null) {
+            codec.writeLine("ERROR: Could not list directory.");
+            return;
         }
+        codec.writeLine("LIST_START");
+        codec.writeLine(String.join("\n", names));
+        codec.writeLine("LIST_END");
     }
 
-    private void changeDirectory(String targetDirName) {
+    private void changeDirectory(String targetDirName) throws IOException {
         Path targetPath;
         if (targetDirName.equals("..")) {
             targetPath = currentDirectory.getParent();
@@ -284,22 +569,36 @@ public class ClientHandler implements Runnable {
 
         if (!targetPath.startsWith(rootDirectory)) {
             System.err.println("Attempted to change directory outside of root: " + targetPath);
-            out.println("ERROR: Access denied. Cannot go above root directory.");
+            codec.writeLine("ERROR: Access denied. Cannot go above root directory.");
+            return;
+        }
+        Cluster.Node owner = ownerOf(targetPath);
+        if (isRemote(owner)) {
+            // Директорія існує лише на власнику: перевіряємо там і повертаємо його сесію в домашню директорію
+            String response = forward(owner, "CD " + CommandArgs.quote("/" + rootDirectory.relativize(targetPath).toString().replace(File.separatorChar, '/')));
+            if (response.startsWith("OK")) {
+                forward(owner, "CD /");
+                currentDirectory = targetPath;
+                log("Changed directory to: " + currentDirectory + " on node " + owner.getId());
+                codec.writeLine("OK: Directory changed to " + currentDirectory.getFileName() + ".");
+            } else {
+                codec.writeLine(response);
+            }
             return;
         }
 
         try {
             if (Files.exists(targetPath) && Files.isDirectory(targetPath)) {
                 currentDirectory = targetPath;
-                System.out.println("Changed directory to: " + currentDirectory.toAbsolutePath());
-                out.println("OK: Directory changed to " + currentDirectory.getFileName() + ".");
+                log("Changed directory to: " + currentDirectory.toAbsolutePath());
+                codec.writeLine("OK: Directory changed to " + currentDirectory.getFileName() + ".");
             } else {
                 System.err.println("Directory not found or not a directory: " + targetPath);
-                out.println("ERROR: Directory not found or not a directory.");
+                codec.writeLine("ERROR: Directory not found or not a directory.");
             }
         } catch (SecurityException e) {
             System.err.println("Permission denied for changing directory to " + targetPath + ": " + e.getMessage());
-            out.println("ERROR: Permission denied.");
+            codec.writeLine("ERROR: Permission denied.");
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,203 @@
+package server;
+
+import common.Constants;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Статична конфігурація кластера і кільце консистентного хешування.
+// Простір імен ділиться за директоріями верхнього рівня (відносно кореня сервера):
+// усе дерево під такою директорією належить одному вузлу. Тож домашня директорія нижче кореня
+// цілком лежить на одному вузлі, і він сам стежить за її квотою. Формат файлу:
+//   secret <спільний секрет для з'єднань між вузлами>
+//   node <id> <host> <controlPort>
+// Секрет по мережі не передається: вузол доводить, що знає його, відповіддю HMAC на разовий виклик.
+public class Cluster {
+    private static final int VIRTUAL_NODES = 128; // На вузол, для рівномірного розподілу
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public static class Node {
+        private final String id;
+        private final String host;
+        private final int port;
+
+        Node(String id, String host, int port) {
+            this.id = id;
+            this.host = host;
+            this.port = port;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+    }
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final TreeMap<Long, Node> ring = new TreeMap<>();
+    private final Node localNode;
+    private final Map<String, Long> retryAfter = new ConcurrentHashMap<>(); // Недоступні вузли: id -> коли пробувати знову
+    private SecretKeySpec secret;
+
+    public Cluster(Path configFile, String localNodeId) throws IOException {
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(configFile, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields[0].equals("secret") && fields.length == 2) {
+                secret = new SecretKeySpec(fields[1].getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+            } else if (fields[0].equals("node") && fields.length == 4) {
+                try {
+                    nodes.add(new Node(fields[1], fields[2], Integer.parseInt(fields[3])));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid port at " + configFile + ":" + lineNumber);
+                }
+            } else {
+                throw new IOException("Invalid cluster config line at " + configFile + ":" + lineNumber);
+            }
+        }
+        if (secret == null) {
+            throw new IOException("Cluster config " + configFile + " has no secret.");
+        }
+
+        Node local = null;
+        for (Node node : nodes) {
+            if (node.id.equals(localNodeId)) {
+                local = node;
+            }
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(node.id + "#" + i), node);
+            }
+        }
+        if (local == null) {
+            throw new IOException("Node '" + localNodeId + "' is not listed in " + configFile);
+        }
+        localNode = local;
+    }
+
+    public Node getLocalNode() {
+        return localNode;
+    }
+
+    public List<Node> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    // Після невдалого підключення до вузла не звертаються PEER_RETRY_DELAY_MILLIS; спільне для всіх сесій.
+    // Збій запиту в уже відкритій сесії сюди не входить: він стосується лише тієї сесії.
+    public void markUnavailable(Node node) {
+        retryAfter.put(node.id, System.currentTimeMillis() + Constants.PEER_RETRY_DELAY_MILLIS);
+    }
+
+    public boolean isAvailable(Node node) {
+        Long until = retryAfter.get(node.id);
+        if (until == null) {
+            return true;
+        }
+        if (System.currentTimeMillis() < until) {
+            return false;
+        }
+        retryAfter.remove(node.id, until);
+        return true;
+    }
+
+    // Разовий виклик для команди PEER
+    public String newChallenge() {
+        byte[] nonce = new byte[32];
+        RANDOM.nextBytes(nonce);
+        return Base64.getEncoder().encodeToString(nonce);
+    }
+
+    // HMAC від виклику і імені користувача, від імені якого відкривається сесія
+    public String respond(String challenge, String username) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secret);
+            return Base64.getEncoder().encodeToString(
+                    mac.doFinal((challenge + "\n" + username).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public boolean checkResponse(String challenge, String username, String response) {
+        return response != null && MessageDigest.isEqual(respond(challenge, username).getBytes(StandardCharsets.US_ASCII),
+                response.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // Чи це адреса одного з вузлів конфігурації (імена розв'язуються при кожній перевірці)
+    public boolean isNodeAddress(InetAddress address) {
+        for (Node node : nodes) {
+            try {
+                for (InetAddress nodeAddress : InetAddress.getAllByName(node.host)) {
+                    if (nodeAddress.equals(address)) {
+                        return true;
+                    }
+                }
+            } catch (UnknownHostException e) {
+                // Вузол з нерозв'язуваним іменем не може бути джерелом з'єднання
+            }
+        }
+        return false;
+    }
+
+    // Власник шляху, заданого відносно кореня сервера; null для самого кореня (він є на всіх вузлах)
+    public Node ownerOf(Path relativePath) {
+        if (relativePath.getNameCount() == 0 || relativePath.toString().isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, Node> entry = ring.ceilingEntry(hash(relativePath.getName(0).toString()));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    // Квоту рахує кожен вузол окремо, тому її не забезпечити для домашньої директорії,
+    // що охоплює кілька вузлів (сам корінь сервера)
+    public boolean canEnforceQuota(Path relativeHome, long quotaBytes) {
+        return quotaBytes <= 0 || ownerOf(relativeHome) != null;
+    }
+
+    public boolean isLocal(Node node) {
+        return node == null || node == localNode;
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (digest[i] & 0xFF);
+            }
+            return value;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
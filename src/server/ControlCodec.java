@@ -0,0 +1,232 @@
+package server;
+
+import common.Constants;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// Байтовий кодек каналу керування: розбирає команди з буфера, що перевикористовується,
+// без проміжних String, і накопичує відповіді до моменту, коли потрібно чекати на клієнта.
+public class ControlCodec {
+    public enum Command {
+        AUTH, UPLOAD, DOWNLOAD, MKDIR, RMDIR, MVDIR, LIST, CD, PEER, UNKNOWN;
+
+        private final byte[] verb = name().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final Command[] COMMANDS = Command.values();
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final InputStream in;
+    private final OutputStream out;
+
+    private byte[] readBuffer = new byte[Constants.BUFFER_SIZE];
+    private int readPos = 0;
+    private int readLimit = 0;
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    private int argPos = 0;
+
+    private final byte[] writeBuffer = new byte[Constants.BUFFER_SIZE];
+    private int writePos = 0;
+    private byte[] scratch = new byte[256]; // Для аргументів з escape-послідовностями
+
+    public ControlCodec(InputStream in, OutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    // Читає наступний рядок і повертає його команду, або null, якщо клієнт закрив з'єднання.
+    // Накопичені відповіді скидаються в сокет лише перед блокуючим читанням.
+    public Command readCommand() throws IOException {
+        int newline;
+        while ((newline = indexOf((byte) '\n', readPos, readLimit)) < 0) {
+            flush();
+            if (!fill()) {
+                return null;
+            }
+        }
+
+        lineStart = readPos;
+        lineEnd = newline;
+        readPos = newline + 1;
+        if (lineEnd > lineStart && readBuffer[lineEnd - 1] == '\r') {
+            lineEnd--;
+        }
+
+        int verbEnd = lineStart;
+        while (verbEnd < lineEnd && readBuffer[verbEnd] != ' ') {
+            verbEnd++;
+        }
+        argPos = verbEnd;
+        return matchVerb(lineStart, verbEnd);
+    }
+
+    // Наступний аргумент: слово до пробілу або рядок у лапках (з підтримкою \" та \\)
+    public String nextArg() {
+        skipSpaces();
+        if (argPos >= lineEnd) {
+            return null;
+        }
+        if (readBuffer[argPos] == '"') {
+            return readQuoted();
+        }
+        int start = argPos;
+        while (argPos < lineEnd && readBuffer[argPos] != ' ') {
+            argPos++;
+        }
+        return new String(readBuffer, start, argPos - start, StandardCharsets.UTF_8);
+    }
+
+    // Решта рядка як один аргумент; шлях у лапках розбирається як nextArg
+    public String remainingArg() {
+        skipSpaces();
+        if (argPos >= lineEnd) {
+            return "";
+        }
+        if (readBuffer[argPos] == '"') {
+            return readQuoted();
+        }
+        String rest = new String(readBuffer, argPos, lineEnd - argPos, StandardCharsets.UTF_8);
+        argPos = lineEnd;
+        return rest;
+    }
+
+    public boolean hasMoreArgs() {
+        skipSpaces();
+        return argPos < lineEnd;
+    }
+
+    // Поточний рядок повністю, лише для журналювання
+    public String currentLine() {
+        return new String(readBuffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    public void writeLine(String line) throws IOException {
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c >= 0x80) {
+                writeBytes(line.substring(i).getBytes(StandardCharsets.UTF_8));
+                break;
+            }
+            if (writePos == writeBuffer.length) {
+                flush();
+            }
+            writeBuffer[writePos++] = (byte) c;
+        }
+        if (writePos == writeBuffer.length) {
+            flush();
+        }
+        writeBuffer[writePos++] = '\n';
+    }
+
+    public void flush() throws IOException {
+        if (writePos > 0) {
+            out.write(writeBuffer, 0, writePos);
+            writePos = 0;
+        }
+        out.flush();
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (writePos == writeBuffer.length) {
+                flush();
+            }
+            int chunk = Math.min(bytes.length - offset, writeBuffer.length - writePos);
+            System.arraycopy(bytes, offset, writeBuffer, writePos, chunk);
+            writePos += chunk;
+            offset += chunk;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (readPos > 0) {
+            // Зсуваємо неповний рядок на початок буфера
+            System.arraycopy(readBuffer, readPos, readBuffer, 0, readLimit - readPos);
+            readLimit -= readPos;
+            readPos = 0;
+        }
+        if (readLimit == readBuffer.length) {
+            if (readBuffer.length >= MAX_LINE_LENGTH) {
+                throw new IOException("Command line too long.");
+            }
+            byte[] larger = new byte[readBuffer.length * 2];
+            System.arraycopy(readBuffer, 0, larger, 0, readLimit);
+            readBuffer = larger;
+        }
+        int bytesRead = in.read(readBuffer, readLimit, readBuffer.length - readLimit);
+        if (bytesRead == -1) {
+            return false;
+        }
+        readLimit += bytesRead;
+        return true;
+    }
+
+    private Command matchVerb(int start, int end) {
+        int length = end - start;
+        for (Command command : COMMANDS) {
+            byte[] verb = command.verb;
+            if (command == Command.UNKNOWN || verb.length != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && (readBuffer[start + i] & 0xDF) == verb[i]) { // 0xDF переводить ASCII-літеру у верхній регістр
+                i++;
+            }
+            if (i == length) {
+                return command;
+            }
+        }
+        return Command.UNKNOWN;
+    }
+
+    private String readQuoted() {
+        int start = ++argPos; // Пропускаємо відкриваючу лапку
+        boolean escaped = false;
+        while (argPos < lineEnd && readBuffer[argPos] != '"') {
+            if (readBuffer[argPos] == '\\' && argPos + 1 < lineEnd) {
+                escaped = true;
+                argPos++;
+            }
+            argPos++;
+        }
+        int end = argPos;
+        if (argPos < lineEnd) {
+            argPos++; // Закриваюча лапка
+        }
+        if (!escaped) {
+            return new String(readBuffer, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        if (scratch.length < end - start) {
+            scratch = new byte[end - start];
+        }
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            if (readBuffer[i] == '\\' && i + 1 < end) {
+                i++;
+            }
+            scratch[length++] = readBuffer[i];
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void skipSpaces() {
+        while (argPos < lineEnd && readBuffer[argPos] == ' ') {
+            argPos++;
+        }
+    }
+
+    private int indexOf(byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (readBuffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,28 +1,45 @@
 package server;
 
 import common.Constants;
+import common.TlsChannel;
 import java.io.*;
 import java.net.Socket; // Приймаємо Socket
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import javax.net.ssl.SSLContext;
 
 public class DataTransferHandler implements Runnable {
     private Socket dataSocket; // Приймаємо вже відкритий сокет
     private Path filePath;
     private long fileSize;
     private TransferMode mode;
+    private FileCache fileCache;
+    private SSLContext tlsContext;
+    private TlsChannel tls; // null для нешифрованого каналу
+    private UserAccount account;
+    private long reservedBytes; // Зарезервовано під завантаження в квоті; уточнюється після фіксації
+    private UploadCommitter committer;
 
     public enum TransferMode {
         UPLOAD, // Сервер отримує файл
         DOWNLOAD // Сервер відправляє файл
     }
 
-    public DataTransferHandler(Socket dataSocket, Path filePath, long fileSize, TransferMode mode) {
+    public DataTransferHandler(Socket dataSocket, Path filePath, long fileSize, TransferMode mode, FileCache fileCache, SSLContext tlsContext, UserAccount account, long reservedBytes, UploadCommitter committer) {
         this.dataSocket = dataSocket;
         this.filePath = filePath;
         this.fileSize = fileSize;
         this.mode = mode;
+        this.fileCache = fileCache;
+        this.tlsContext = tlsContext;
+        this.account = account;
+        this.reservedBytes = reservedBytes;
+        this.committer = committer;
     }
 
     @Override
@@ -30,21 +47,46 @@ public class DataTransferHandler implements Runnable {
         try (Socket currentDataSocket = this.dataSocket) { // Використовуємо прийнятий сокет
             System.out.println("Server Data Channel active for " + filePath.getFileName() + " on local port " + currentDataSocket.getLocalPort() + " (remote: " + currentDataSocket.getRemoteSocketAddress() + ")");
 
-            if (mode == TransferMode.UPLOAD) {
-                receiveFile(currentDataSocket);
-            } else {
-                sendFile(currentDataSocket);
+            if (tlsContext != null) {
+                // Клієнт відновлює сесію каналу керування, тому handshake тут скорочений
+                tls = TlsChannel.server(currentDataSocket.getChannel(), tlsContext);
+                tls.handshake();
+            }
+            try {
+                if (mode == TransferMode.UPLOAD) {
+                    receiveFile(currentDataSocket);
+                } else {
+                    sendFile(currentDataSocket);
+                }
+            } finally {
+                if (tls != null) {
+                    tls.close();
+                }
             }
             System.out.println("Data transfer complete for " + filePath.getFileName() + ".");
 
         } catch (IOException e) {
             System.err.println("Error in DataTransferHandler for " + filePath.getFileName() + ": " + e.getMessage());
+        } finally {
+            if (mode == TransferMode.UPLOAD) {
+                // Повертаємо резерв, якщо файл не зафіксовано, або різницю з фактично заміненим файлом
+                account.release(reservedBytes);
+            }
         }
     }
 
     private void sendFile(Socket socket) throws IOException {
+        ByteChannel channel = tls != null ? tls : socket.getChannel();
+        if (channel != null) {
+            ByteBuffer cached = fileCache.get(filePath);
+            if (cached != null) {
+                sendCached(channel, cached);
+                return;
+            }
+        }
+
         try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(filePath, StandardOpenOption.READ));
-             BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+             BufferedOutputStream out = new BufferedOutputStream(tls != null ? tls.getOutputStream() : socket.getOutputStream())) {
 
             byte[] buffer = new byte[Constants.BUFFER_SIZE];
             int bytesRead;
@@ -61,21 +103,67 @@ public class DataTransferHandler implements Runnable {
         }
     }
 
-    private void receiveFile(Socket socket) throws IOException {
-        try (BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
-             BufferedOutputStream out = new BufferedOutputStream(Files.newOutputStream(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE))) {
+    private void sendCached(ByteChannel channel, ByteBuffer cached) throws IOException {
+        // Пишемо з off-heap буфера прямо в сокет (або в SSLEngine), без копіювання в масив на кучі
+        cached.limit((int) Math.min(cached.limit(), fileSize));
+        System.out.println("Sending cached file: " + filePath.getFileName() + " (" + fileSize + " bytes)");
+        while (cached.hasRemaining()) {
+            channel.write(cached);
+        }
+        System.out.println("File sent: " + filePath.getFileName());
+    }
 
-            byte[] buffer = new byte[Constants.BUFFER_SIZE];
-            int bytesRead;
+    private void receiveFile(Socket socket) throws IOException {
+        // Пишемо в staging-файл: до фіксації видно попередню версію файлу (або нічого), а не половину нової
+        Path stagedFile = committer.createStagingFile();
+        boolean committed = false;
+        try {
             long totalBytesRead = 0;
+            // Вхідний потік не закриваємо: разом з ним закрився б сокет, а закриття каналу - це
+            // підтвердження для клієнта, яке можна дати лише після фіксації
+            BufferedInputStream in = new BufferedInputStream(tls != null ? tls.getInputStream() : socket.getInputStream());
+            try (FileChannel file = FileChannel.open(stagedFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 BufferedOutputStream out = new BufferedOutputStream(Channels.newOutputStream(file))) {
 
-            System.out.println("Receiving file: " + filePath.getFileName() + " (" + fileSize + " bytes)");
+                byte[] buffer = new byte[Constants.BUFFER_SIZE];
+                int bytesRead;
 
-            while (totalBytesRead < fileSize && (bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
-                totalBytesRead += bytesRead;
+                System.out.println("Receiving file: " + filePath.getFileName() + " (" + fileSize + " bytes)");
+
+                // Не більше заявленого розміру: квоту зарезервовано саме під нього
+                while (totalBytesRead < fileSize
+                        && (bytesRead = in.read(buffer, 0, (int) Math.min(buffer.length, fileSize - totalBytesRead))) != -1) {
+                    out.write(buffer, 0, bytesRead);
+                    totalBytesRead += bytesRead;
+                }
+                out.flush(); // fsync - у committer.commit: великий файл синхронізується там же, дрібний - через журнал
             }
+            if (totalBytesRead < fileSize) {
+                throw new IOException("upload interrupted after " + totalBytesRead + " of " + fileSize + " bytes, discarded");
+            }
+
+            long replaced = committer.commit(stagedFile, filePath);
+            committed = true;
+            reservedBytes -= fileSize - replaced;
             System.out.println("File received: " + filePath.getFileName());
+        } catch (IOException e) {
+            abort(socket);
+            throw e;
+        } finally {
+            if (!committed) {
+                committer.discard(stagedFile);
+            }
+            fileCache.invalidate(filePath);
+        }
+    }
+
+    // Звичайне закриття (FIN чи close_notify) клієнт сприйняв би як успіх, тому скидаємо з'єднання (RST)
+    private void abort(Socket socket) {
+        try {
+            socket.setSoLinger(true, 0);
+            socket.close();
+        } catch (IOException e) {
+            // Сокет уже закрито
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Спільний кеш файлів для DOWNLOAD. Вміст зберігається поза кучею (direct buffers),
+// витіснення LRU за сумарним розміром у байтах.
+public class FileCache {
+    private final long maxBytes;
+    private final long maxFileSize;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // access-order для LRU
+    private final ConcurrentHashMap<Path, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    private long currentBytes = 0;
+
+    private static class Entry {
+        final ByteBuffer data;
+        final long size;
+        final FileTime lastModified;
+
+        Entry(ByteBuffer data, long size, FileTime lastModified) {
+            this.data = data;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() && lastModified.equals(attrs.lastModifiedTime());
+        }
+    }
+
+    public FileCache(long maxBytes, long maxFileSize) {
+        this.maxBytes = maxBytes;
+        this.maxFileSize = Math.min(maxFileSize, maxBytes);
+    }
+
+    // Повертає read-only буфер з вмістом файлу або null, якщо файл не кешується
+    public ByteBuffer get(Path path) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        if (attrs.size() > maxFileSize || attrs.size() > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(path);
+        }
+        if (entry != null && entry.matches(attrs)) {
+            return entry.data.duplicate();
+        }
+
+        // Одночасні запити на той самий "холодний" файл чекають одного читання з диска
+        CompletableFuture<Entry> pending = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = loading.putIfAbsent(path, pending);
+        if (existing == null) {
+            try {
+                entry = load(path, attrs);
+                if (entry != null) {
+                    put(path, entry);
+                }
+                pending.complete(entry);
+            } catch (IOException e) {
+                pending.completeExceptionally(e);
+                throw e;
+            } finally {
+                loading.remove(path, pending);
+            }
+        } else {
+            try {
+                entry = existing.join();
+            } catch (CompletionException e) {
+                throw new IOException("Error loading " + path.getFileName() + " into cache", e.getCause());
+            }
+        }
+
+        if (entry == null || !entry.matches(attrs)) {
+            return null;
+        }
+        return entry.data.duplicate();
+    }
+
+    public void invalidate(Path path) {
+        synchronized (entries) {
+            Entry removed = entries.remove(path);
+            if (removed != null) {
+                currentBytes -= removed.size;
+            }
+        }
+    }
+
+    // Видаляє всі записи всередині директорії (для RMDIR/MVDIR)
+    public void invalidateTree(Path directory) {
+        synchronized (entries) {
+            Iterator<Map.Entry<Path, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Path, Entry> e = it.next();
+                if (e.getKey().startsWith(directory)) {
+                    currentBytes -= e.getValue().size;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private Entry load(Path path, BasicFileAttributes attrs) throws IOException {
+        int size = (int) attrs.size();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) {
+                    return null; // Файл змінився під час читання, не кешуємо
+                }
+            }
+            if (channel.size() != size) {
+                return null;
+            }
+        }
+        buffer.flip();
+        System.out.println("Cached file: " + path.getFileName() + " (" + size + " bytes)");
+        return new Entry(buffer.asReadOnlyBuffer(), size, attrs.lastModifiedTime());
+    }
+
+    private void put(Path path, Entry entry) {
+        synchronized (entries) {
+            Entry previous = entries.put(path, entry);
+            if (previous != null) {
+                currentBytes -= previous.size;
+            }
+            currentBytes += entry.size;
+
+            Iterator<Map.Entry<Path, Entry>> it = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                Map.Entry<Path, Entry> eldest = it.next();
+                if (eldest.getKey().equals(path)) {
+                    continue;
+                }
+                currentBytes -= eldest.getValue().size;
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package server;
+
+import common.Constants;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Користувачі у текстовому файлі, один на рядок:
+//   username:iterations:salt(base64):hash(base64):home:quotaBytes
+// Паролі зберігаються як PBKDF2-HMAC-SHA256 з сіллю. Домашня директорія задається відносно кореня сервера.
+public class FileUserStore implements AuthenticationProvider {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Map<String, StoredUser> users = new HashMap<>();
+    // Кеш успішних перевірок: швидкий хеш замість повільного PBKDF2 при повторних входах.
+    // Неуспішні спроби не кешуються, тож перебір паролів і далі коштує повний PBKDF2.
+    private final LinkedHashMap<String, byte[]> verified;
+    private final byte[] cacheKey = new byte[32]; // Випадковий на процес, щоб кеш не був придатний поза ним
+    // Для невідомих імен перевіряється пароль цього запису, щоб за часом відповіді не можна було
+    // дізнатися, чи існує користувач
+    private final StoredUser unknownUser;
+
+    private static class StoredUser {
+        final int iterations;
+        final byte[] salt;
+        final byte[] hash;
+        final UserAccount account;
+
+        StoredUser(int iterations, byte[] salt, byte[] hash, UserAccount account) {
+            this.iterations = iterations;
+            this.salt = salt;
+            this.hash = hash;
+            this.account = account;
+        }
+    }
+
+    public FileUserStore(Path usersFile, Path rootDirectory, int cacheSize) throws IOException {
+        RANDOM.nextBytes(cacheKey);
+        byte[] dummySalt = new byte[16];
+        byte[] dummyHash = new byte[HASH_BITS / 8];
+        RANDOM.nextBytes(dummySalt);
+        RANDOM.nextBytes(dummyHash);
+        this.unknownUser = new StoredUser(Constants.PASSWORD_HASH_ITERATIONS, dummySalt, dummyHash, null);
+        this.verified = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(usersFile, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(":");
+            if (fields.length != 6) {
+                throw new IOException("Invalid user record at " + usersFile + ":" + lineNumber);
+            }
+            try {
+                Path home = rootDirectory.resolve(fields[4]).normalize();
+                if (!home.startsWith(rootDirectory)) {
+                    throw new IOException("Home directory outside of root at " + usersFile + ":" + lineNumber);
+                }
+                UserAccount account = new UserAccount(fields[0], home, Long.parseLong(fields[5]));
+                users.put(fields[0], new StoredUser(Integer.parseInt(fields[1]),
+                        Base64.getDecoder().decode(fields[2]), Base64.getDecoder().decode(fields[3]), account));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid user record at " + usersFile + ":" + lineNumber + ": " + e.getMessage());
+            }
+        }
+        System.out.println("Loaded " + users.size() + " user(s) from " + usersFile);
+    }
+
+    @Override
+    public UserAccount authenticate(String username, String password) {
+        StoredUser user = users.get(username);
+        if (user == null) {
+            MessageDigest.isEqual(pbkdf2(password.toCharArray(), unknownUser.salt, unknownUser.iterations), unknownUser.hash);
+            return null;
+        }
+
+        byte[] quick = quickHash(user.salt, password);
+        byte[] cached;
+        synchronized (verified) {
+            cached = verified.get(username);
+        }
+        if (cached != null && MessageDigest.isEqual(cached, quick)) {
+            return user.account;
+        }
+
+        byte[] hash = pbkdf2(password.toCharArray(), user.salt, user.iterations);
+        if (!MessageDigest.isEqual(hash, user.hash)) {
+            return null;
+        }
+        synchronized (verified) {
+            verified.put(username, quick);
+        }
+        return user.account;
+    }
+
+    @Override
+    public UserAccount findAccount(String username) {
+        StoredUser user = users.get(username);
+        return user != null ? user.account : null;
+    }
+
+    // Рядок для файлу користувачів
+    public static String createRecord(String username, String password, String home, long quotaBytes) {
+        byte[] salt = new byte[16];
+        RANDOM.nextBytes(salt);
+        byte[] hash = pbkdf2(password.toCharArray(), salt, Constants.PASSWORD_HASH_ITERATIONS);
+        return username + ":" + Constants.PASSWORD_HASH_ITERATIONS + ":" + Base64.getEncoder().encodeToString(salt)
+                + ":" + Base64.getEncoder().encodeToString(hash) + ":" + home + ":" + quotaBytes;
+    }
+
+    private byte[] quickHash(byte[] salt, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(cacheKey);
+            digest.update(salt);
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] pbkdf2(char[] password, byte[] salt, int iterations) {
+        try {
+            PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Додавання користувача: java server.FileUserStore <username> <password> <home> <quotaBytes>
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4 || args[0].contains(":") || args[2].contains(":")) {
+            System.err.println("Usage: FileUserStore <username> <password> <home> <quotaBytes (0 = unlimited)>");
+            System.exit(1);
+        }
+        String record = createRecord(args[0], args[1], args[2], Long.parseLong(args[3]));
+        Files.writeString(Paths.get(Constants.USERS_FILE), record + System.lineSeparator(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        System.out.println("User " + args[0] + " added to " + Constants.USERS_FILE);
+    }
+}
@@ -1,16 +1,25 @@
 package server;
 
 import common.Constants;
+import common.TlsChannel;
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import javax.net.ssl.SSLContext;
 
 public class FtpServer {
-    private ServerSocket controlSocket;
+    private ServerSocketChannel controlSocket;
     private Path rootDirectory;
+    private FileCache fileCache;
+    private SSLContext tlsContext; // null, якщо TLS вимкнено
+    private AuthenticationProvider authProvider;
+    private Cluster cluster; // null в автономному режимі
+    private UploadCommitter committer;
 
     public FtpServer() {
         try {
@@ -21,8 +30,40 @@ public class FtpServer {
                 System.out.println("Created root directory: " + rootDirectory.toAbsolutePath());
             }
 
-            controlSocket = new ServerSocket(Constants.CONTROL_PORT);
-            System.out.println("FTP Server listening on port " + Constants.CONTROL_PORT + " for control commands...");
+            Path usersFile = Paths.get(Constants.USERS_FILE);
+            if (!Files.exists(usersFile)) {
+                // Обліковий запис за замовчуванням з усім коренем і без квоти, як було до файлу користувачів
+                Files.writeString(usersFile, FileUserStore.createRecord("user", "pass", ".", 0) + System.lineSeparator(),
+                        StandardOpenOption.CREATE_NEW);
+                System.out.println("Created users file with default account 'user': " + usersFile.toAbsolutePath());
+            }
+            authProvider = new FileUserStore(usersFile, rootDirectory, Constants.AUTH_CACHE_SIZE);
+
+            // Відновлення після збою має завершитись до прийому нових завантажень
+            committer = new UploadCommitter(rootDirectory, Paths.get(Constants.STAGING_DIRECTORY), Constants.COMMIT_INLINE_MAX,
+                    Constants.COMMIT_GROUP);
+            if (Constants.COMMIT_GROUP) {
+                Thread commitThread = new Thread(committer, "upload-committer");
+                commitThread.setDaemon(true);
+                commitThread.start();
+            }
+
+            fileCache = new FileCache(Constants.CACHE_MAX_BYTES, Constants.CACHE_MAX_FILE_SIZE);
+            tlsContext = TlsChannel.createContext(true, Constants.CLUSTER_CONFIG != null); // Truststore - для з'єднань до інших вузлів
+            int port = Constants.CONTROL_PORT;
+            if (Constants.CLUSTER_CONFIG != null) {
+                if (tlsContext == null) {
+                    throw new IOException("Cluster mode requires TLS (-Dftp.tls=true) for connections between nodes.");
+                }
+                cluster = new Cluster(Paths.get(Constants.CLUSTER_CONFIG), Constants.NODE_ID);
+                port = cluster.getLocalNode().getPort(); // Порт вузла задає конфігурація кластера
+                System.out.println("Cluster node '" + cluster.getLocalNode().getId() + "' of " + cluster.getNodes().size()
+                        + ", root " + rootDirectory.toAbsolutePath());
+            }
+            // Канали потрібні для SSLEngine і для запису кешованих файлів напряму в сокет
+            controlSocket = ServerSocketChannel.open().bind(new InetSocketAddress(port));
+            System.out.println("FTP Server listening on port " + port + " for control commands"
+                    + (tlsContext != null ? " (TLS)..." : "..."));
         } catch (IOException e) {
             System.err.println("Error starting server: " + e.getMessage());
             System.exit(1);
@@ -32,9 +73,9 @@ public class FtpServer {
     public void start() {
         while (true) {
             try {
-                Socket clientSocket = controlSocket.accept();
+                Socket clientSocket = controlSocket.accept().socket();
                 System.out.println("New client connected: " + clientSocket.getInetAddress().getHostAddress());
-                ClientHandler clientHandler = new ClientHandler(clientSocket, rootDirectory);
+                ClientHandler clientHandler = new ClientHandler(clientSocket, rootDirectory, fileCache, tlsContext, authProvider, cluster, committer);
                 new Thread(clientHandler).start(); // Запускаємо обробник клієнта в окремому потоці
             } catch (IOException e) {
                 System.err.println("Error accepting client connection: " + e.getMessage());
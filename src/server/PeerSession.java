@@ -0,0 +1,96 @@
+package server;
+
+import common.CommandArgs;
+import common.Constants;
+import common.TlsChannel;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import javax.net.ssl.SSLContext;
+
+// З'єднання керування до вузла-власника від імені користувача сесії.
+// Вузол-власник довіряє йому без пароля користувача: лише через TLS, з адреси вузла кластера
+// і з відповіддю на виклик PEER, обчисленою зі спільного секрету.
+// Поточна директорія на власнику завжди - домашня, тому всі шляхи передаються відносно неї.
+public class PeerSession {
+    private final Cluster.Node node;
+    private final Socket socket;
+    private final TlsChannel tls;
+    private final PrintWriter out;
+    private final BufferedReader in;
+
+    public PeerSession(Cluster.Node node, Cluster cluster, SSLContext tlsContext, String username) throws IOException {
+        this.node = node;
+        SocketChannel channel = SocketChannel.open();
+        socket = channel.socket();
+        try {
+            // Без тайм-аутів недоступний вузол блокував би сесію клієнта на хвилини
+            socket.connect(new InetSocketAddress(node.getHost(), node.getPort()), Constants.PEER_CONNECT_TIMEOUT_MILLIS);
+            tls = TlsChannel.client(channel, tlsContext, node.getHost(), node.getPort());
+            tls.setReadTimeout(Constants.PEER_READ_TIMEOUT_MILLIS);
+            tls.handshake();
+            out = new PrintWriter(tls.getOutputStream(), true);
+            in = new BufferedReader(new InputStreamReader(tls.getInputStream()));
+
+            String peerCommand = "PEER " + CommandArgs.quote(username);
+            String response = request(peerCommand);
+            if (response.startsWith("CHALLENGE ")) {
+                response = request(peerCommand + " " + cluster.respond(response.substring("CHALLENGE ".length()), username));
+            }
+            if (!response.startsWith("OK")) {
+                throw new IOException("Node " + node.getId() + " rejected peer session: " + response);
+            }
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    public Cluster.Node getNode() {
+        return node;
+    }
+
+    // Команда з однорядковою відповіддю
+    public String request(String line) throws IOException {
+        out.println(line);
+        return readLine();
+    }
+
+    // LIST: рядки між LIST_START і LIST_END, або null, якщо вузол відповів помилкою
+    public List<String> requestList(String line) throws IOException {
+        String response = request(line);
+        if (!response.equals("LIST_START")) {
+            return null;
+        }
+        List<String> entries = new ArrayList<>();
+        while (!(response = readLine()).equals("LIST_END")) {
+            if (!response.isEmpty()) {
+                entries.add(response);
+            }
+        }
+        return entries;
+    }
+
+    public void close() {
+        try {
+            tls.close();
+            socket.close();
+        } catch (IOException e) {
+            // Вузол міг уже закрити з'єднання
+        }
+    }
+
+    private String readLine() throws IOException {
+        String response = in.readLine();
+        if (response == null) {
+            throw new IOException("Node " + node.getId() + " closed peer session.");
+        }
+        return response;
+    }
+}
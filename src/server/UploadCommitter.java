@@ -0,0 +1,394 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Фіксація завантажень. Завантажувач пише в staging-файл без fsync; до фіксації видно попередню версію
+// файлу (або нічого), а не половину нової. За замовчуванням кожен файл фіксується окремо в потоці
+// завантажувача: fsync staging-файлу, атомарне перейменування на місце, fsync цільової директорії.
+// Паралельні fsync файлова система (напр., ext4) і так об'єднує в одну транзакцію, тому там це швидше за журнал
+// (порівняння - bench.UploadCommitBenchmark).
+// Групова фіксація через журнал (groupCommit) вмикається окремо - для дисків, де кожен fsync дорогий
+// і паралельні не об'єднуються. Тоді завантажувач чекає, поки один потік фіксації не обробить разом
+// усе, що накопичилось:
+//  - дрібні файли (до inlineMaxBytes) дописуються в журнал, і один fsync журналу на пакет робить надійними
+//    всі їхні дані; потім файли атомарно перейменовуються на місце без власного fsync;
+//  - великі файли (разом зі staging-директорією) синхронізує сам завантажувач до постановки в чергу,
+//    паралельно з іншими; потік фіксації лише пише про них запис у журнал і перейменовує їх.
+// Тож на пакет у потоці фіксації лишається один fsync - журналу.
+// Клієнт отримує підтвердження після цього.
+// Контрольна точка (при розмірі журналу понад ліміт, після паузи у завантаженнях або перед RMDIR/MVDIR)
+// синхронізує перейменовані дрібні файли і цільові директорії та обнуляє журнал. Після збою відновлення переписує їх з журналу,
+// доперейменовує синхронізовані великі файли, а решту staging-файлів (недокачані) видаляє.
+// Запис журналу: [int довжина заголовка][long довжина даних, -1 - дані в staging-файлі]
+//                [заголовок "staging-файл<TAB>шлях відносно кореня"][дані][int CRC32 усього попереднього]
+public class UploadCommitter implements Runnable {
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String STAGING_SUFFIX = ".part";
+    private static final long JOURNAL_MAX_BYTES = 64L * 1024 * 1024; // Після цього - контрольна точка
+    private static final long CHECKPOINT_IDLE_MILLIS = 5000; // Контрольна точка, якщо стільки немає завантажень
+
+    private static class Pending {
+        final Path stagedFile; // null - запит контрольної точки
+        final Path target;
+        final byte[] data; // Вміст дрібного файлу для журналу; null для великих
+        final CompletableFuture<Long> done = new CompletableFuture<>(); // Розмір заміненого файлу
+
+        Pending(Path stagedFile, Path target, byte[] data) {
+            this.stagedFile = stagedFile;
+            this.target = target;
+            this.data = data;
+        }
+    }
+
+    private static class Record {
+        final String stagedName;
+        final Path target;
+        final byte[] data; // null для великих файлів
+
+        Record(String stagedName, Path target, byte[] data) {
+            this.stagedName = stagedName;
+            this.target = target;
+            this.data = data;
+        }
+    }
+
+    private final Path rootDirectory;
+    private final Path stagingDirectory;
+    private final Path journalPath;
+    private final long inlineMaxBytes;
+    private final boolean groupCommit;
+    private final Object renameLock = new Object(); // Без групової фіксації: розмір заміненого файлу і перейменування - разом
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final Set<Path> unsynced = new LinkedHashSet<>(); // Дрібні файли, чиї дані поки що лише в журналі
+    private final Set<Path> unsyncedDirectories = new LinkedHashSet<>(); // Куди перейменовано великі файли після контрольної точки
+    private final FileChannel journal;
+
+    // Потік (run) потрібен лише для групової фіксації
+    public UploadCommitter(Path rootDirectory, Path stagingDirectory, long inlineMaxBytes, boolean groupCommit) throws IOException {
+        this.rootDirectory = rootDirectory;
+        this.stagingDirectory = stagingDirectory;
+        this.journalPath = stagingDirectory.resolve(JOURNAL_FILE);
+        this.inlineMaxBytes = inlineMaxBytes;
+        this.groupCommit = groupCommit;
+        Files.createDirectories(stagingDirectory);
+        recover();
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        journal.force(true);
+    }
+
+    // Новий staging-файл; лічильник з нуля безпечний, бо відновлення очищає staging-директорію
+    public Path createStagingFile() {
+        return stagingDirectory.resolve("upload-" + nextId.incrementAndGet() + STAGING_SUFFIX);
+    }
+
+    // Блокує, доки файл не стане на місце і це не переживе збій. Повертає розмір файлу, який
+    // було замінено: перейменування впорядковані, тож для квоти це точна різниця.
+    public long commit(Path stagedFile, Path target) throws IOException {
+        if (!groupCommit) {
+            try (FileChannel channel = FileChannel.open(stagedFile, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            long replaced;
+            synchronized (renameLock) {
+                replaced = UserAccount.sizeOf(target);
+                Files.move(stagedFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(target.getParent());
+            return replaced;
+        }
+
+        // Підготовка йде в потоці завантажувача, щоб fsync великих файлів виконувались паралельно
+        byte[] data = null;
+        if (Files.size(stagedFile) <= inlineMaxBytes) {
+            data = Files.readAllBytes(stagedFile);
+        } else {
+            try (FileChannel channel = FileChannel.open(stagedFile, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            syncDirectory(stagingDirectory); // Відновлення має знайти staging-файл, щоб доперейменувати його
+        }
+        return await(new Pending(stagedFile, target, data));
+    }
+
+    // Блокує до контрольної точки. Потрібно перед видаленням чи переміщенням, інакше відновлення
+    // з журналу повернуло б дрібні файли на старе місце.
+    public void checkpoint() throws IOException {
+        if (!groupCommit) {
+            return; // Журнал не ведеться
+        }
+        await(new Pending(null, null, null));
+    }
+
+    // Недокачаний файл: журнал про нього не знає, тому досить видалити
+    public void discard(Path stagedFile) {
+        try {
+            Files.deleteIfExists(stagedFile);
+        } catch (IOException e) {
+            System.err.println("Could not delete staging file " + stagedFile + ": " + e.getMessage());
+        }
+    }
+
+    private long await(Pending pending) throws IOException {
+        queue.add(pending);
+        try {
+            return pending.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for upload commit.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Pending> batch = new ArrayList<>();
+        while (true) {
+            Pending first;
+            try {
+                first = unsynced.isEmpty() && unsyncedDirectories.isEmpty() ? queue.take() : queue.poll(CHECKPOINT_IDLE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                batch.add(new Pending(null, null, null)); // Простій: контрольна точка, щоб журнал не ріс
+            } else {
+                batch.add(first);
+                queue.drainTo(batch); // Усе, що накопичилось за час попереднього пакета, фіксуємо разом
+            }
+            commitBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void commitBatch(List<Pending> batch) {
+        List<Pending> uploads = new ArrayList<>(batch.size());
+        List<Pending> checkpoints = new ArrayList<>();
+        Set<Pending> inline = new LinkedHashSet<>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (Pending pending : batch) {
+            if (pending.stagedFile == null) {
+                checkpoints.add(pending);
+                continue;
+            }
+            if (pending.data != null) {
+                inline.add(pending);
+            }
+            writeRecord(records, pending.stagedFile.getFileName().toString(), rootDirectory.relativize(pending.target), pending.data);
+            uploads.add(pending);
+        }
+
+        if (!uploads.isEmpty()) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+                long position = journal.size();
+                while (buffer.hasRemaining()) {
+                    position += journal.write(buffer, position);
+                }
+                // Один fsync на пакет. Потрібен і без дрібних файлів: інакше запис великого файлу, що замінив
+                // дрібний з журналу, міг би загубитися, і відновлення повернуло б старий вміст
+                journal.force(false);
+            } catch (IOException e) {
+                System.err.println("Error writing upload journal: " + e.getMessage());
+                uploads.forEach(pending -> fail(pending, e));
+                uploads.clear();
+            }
+        }
+
+        boolean forceCheckpoint = !checkpoints.isEmpty();
+        Map<Pending, Long> committed = new LinkedHashMap<>();
+        for (Pending pending : uploads) {
+            try {
+                long replaced = UserAccount.sizeOf(pending.target);
+                Files.move(pending.stagedFile, pending.target, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                if (inline.contains(pending)) {
+                    unsynced.add(pending.target);
+                } else {
+                    unsyncedDirectories.add(pending.target.getParent()); // Запис у журналі дозволяє повторити перейменування
+                }
+                committed.put(pending, replaced);
+            } catch (IOException e) {
+                // Напр., директорію видалили під час завантаження. Запис уже в журналі, тому
+                // обнуляємо його контрольною точкою, щоб відновлення не створило файл заново.
+                fail(pending, e);
+                forceCheckpoint = true;
+            }
+        }
+        committed.forEach((pending, replaced) -> pending.done.complete(replaced));
+
+        try {
+            if (forceCheckpoint || journal.size() > JOURNAL_MAX_BYTES) {
+                runCheckpoint();
+            }
+            checkpoints.forEach(pending -> pending.done.complete(0L));
+        } catch (IOException e) {
+            System.err.println("Upload journal checkpoint failed: " + e.getMessage());
+            checkpoints.forEach(pending -> pending.done.completeExceptionally(e));
+        }
+    }
+
+    private void fail(Pending pending, IOException e) {
+        System.err.println("Error committing upload " + pending.target + ": " + e.getMessage());
+        discard(pending.stagedFile);
+        pending.done.completeExceptionally(e);
+    }
+
+    private void runCheckpoint() throws IOException {
+        Set<Path> directories = new LinkedHashSet<>(unsyncedDirectories);
+        for (Path target : unsynced) {
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                channel.force(true);
+                directories.add(target.getParent());
+            } catch (NoSuchFileException e) {
+                // Файл уже замінено чи видалено - журнал для нього більше не потрібен
+            }
+        }
+        for (Path directory : directories) {
+            syncDirectory(directory);
+        }
+        journal.truncate(0);
+        journal.force(true);
+        unsynced.clear();
+        unsyncedDirectories.clear();
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, String stagedName, Path relativeTarget, byte[] data) {
+        byte[] header = (stagedName + "\t" + relativeTarget).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer prefix = ByteBuffer.allocate(12).putInt(header.length).putLong(data != null ? data.length : -1);
+        CRC32 crc = new CRC32();
+        crc.update(prefix.array());
+        crc.update(header);
+        out.write(prefix.array(), 0, prefix.capacity());
+        out.write(header, 0, header.length);
+        if (data != null) {
+            crc.update(data);
+            out.write(data, 0, data.length);
+        }
+        out.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array(), 0, 4);
+    }
+
+    // Записи до першого обірваного чи пошкодженого (його пакет не було підтверджено клієнтам)
+    private List<Record> readJournal() throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (!Files.exists(journalPath)) {
+            return records;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+        while (buffer.remaining() >= 16) {
+            int start = buffer.position();
+            int headerLength = buffer.getInt();
+            long dataLength = buffer.getLong();
+            if (headerLength <= 0 || dataLength < -1 || headerLength + Math.max(dataLength, 0) + 4 > buffer.remaining()) {
+                break;
+            }
+            byte[] header = new byte[headerLength];
+            buffer.get(header);
+            byte[] data = null;
+            if (dataLength >= 0) {
+                data = new byte[(int) dataLength];
+                buffer.get(data);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), start, buffer.position() - start);
+            if (buffer.getInt() != (int) crc.getValue()) {
+                break;
+            }
+            String[] fields = new String(header, StandardCharsets.UTF_8).split("\t", 2);
+            if (fields.length == 2) {
+                records.add(new Record(fields[0], rootDirectory.resolve(fields[1]).normalize(), data));
+            }
+        }
+        return records;
+    }
+
+    private void recover() throws IOException {
+        // Для кожного файлу важливий лише останній запис: пізніше завантаження перекриває раніше
+        Map<Path, Record> latest = new LinkedHashMap<>();
+        for (Record record : readJournal()) {
+            latest.remove(record.target);
+            latest.put(record.target, record);
+        }
+
+        int recovered = 0;
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Record record : latest.values()) {
+            Path stagedFile = stagingDirectory.resolve(record.stagedName);
+            if (!record.target.startsWith(rootDirectory)) {
+                continue;
+            }
+            try {
+                if (record.data != null) {
+                    // Вміст міг не дійти до диску до збою: відновлюємо його з журналу
+                    Files.createDirectories(record.target.getParent());
+                    try (FileChannel channel = FileChannel.open(stagedFile, StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        ByteBuffer data = ByteBuffer.wrap(record.data);
+                        while (data.hasRemaining()) {
+                            channel.write(data);
+                        }
+                        channel.force(true);
+                    }
+                } else if (!Files.exists(stagedFile)) {
+                    continue; // Вже перейменовано до збою
+                }
+                Files.move(stagedFile, record.target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                directories.add(record.target.getParent());
+                recovered++;
+            } catch (IOException e) {
+                System.err.println("Could not recover upload " + record.target + ": " + e.getMessage());
+            }
+        }
+        for (Path directory : directories) {
+            syncDirectory(directory);
+        }
+
+        int discarded = 0;
+        try (Stream<Path> files = Files.list(stagingDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(STAGING_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                    discarded++;
+                }
+            }
+        }
+        if (recovered > 0 || discarded > 0) {
+            System.out.println("Upload journal recovery: " + recovered + " committed, " + discarded + " incomplete discarded.");
+        }
+    }
+
+    // Фіксує на диску запис директорії після перейменування (на Windows директорію не відкрити - пропускаємо)
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Файлова система не підтримує fsync директорій
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Обліковий запис з власною домашньою директорією та квотою.
+// Один об'єкт на користувача спільний для всіх його сесій, тому облік місця інкрементальний.
+public class UserAccount {
+    private final String username;
+    private final Path homeDirectory;
+    private final long quotaBytes; // 0 - без обмежень
+    private final AtomicLong usedBytes = new AtomicLong();
+    private boolean usageLoaded = false;
+
+    public UserAccount(String username, Path homeDirectory, long quotaBytes) {
+        this.username = username;
+        this.homeDirectory = homeDirectory;
+        this.quotaBytes = quotaBytes;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Path getHomeDirectory() {
+        return homeDirectory;
+    }
+
+    public long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    // Дерево обходиться лише один раз, при першому вході; далі лише інкрементальні зміни
+    public synchronized void loadUsage() throws IOException {
+        if (usageLoaded) {
+            return;
+        }
+        Files.createDirectories(homeDirectory);
+        try (Stream<Path> files = Files.walk(homeDirectory)) {
+            long total = files.mapToLong(UserAccount::sizeOf).sum();
+            usedBytes.set(total);
+        }
+        usageLoaded = true;
+    }
+
+    // Резервує місце під завантаження; false, якщо квоту буде перевищено.
+    // Від'ємне значення - лише коли новий файл менший за той, що він замінить; розмір завантаження
+    // перевіряє викликач.
+    public boolean tryReserve(long bytes) {
+        if (bytes <= 0) {
+            usedBytes.addAndGet(bytes);
+            return true;
+        }
+        while (true) {
+            long current = usedBytes.get();
+            if (quotaBytes > 0 && current + bytes > quotaBytes) {
+                return false;
+            }
+            if (usedBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    static long sizeOf(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return attrs.isRegularFile() ? attrs.size() : 0;
+        } catch (IOException e) {
+            return 0; // Файл міг зникнути під час обходу
+        }
+    }
+}